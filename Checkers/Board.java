@@ -1,10 +1,14 @@
 package Checkers;
 
 /**
- * This represents a game state. It contains a current checkerboard with all pieces 
- * marked, a note on whose turn it is, and a counter of how many moves have been 
- * played. It also provides action primitives for moves and jumps, but these are 
+ * This represents a game state. It contains a current checkerboard with all pieces
+ * marked, a note on whose turn it is, and a counter of how many moves have been
+ * played. It also provides action primitives for moves and jumps, but these are
  * for board manipulation only and are not to be used by Solver classes.
+ * <p>
+ * Internally the position is packed into three bitboards over the 32 playable
+ * squares (see {@link #square(int, int)}). The int[][] form in {@link #board} is only
+ * built for Boards handed out through the public API, or on demand via {@link #toArray()}.
  * @author mhtong
  *
  */
@@ -17,23 +21,57 @@ public class Board {
 	 * 2 - P1 king
 	 * -1 - P2 piece
 	 * -2 - P2 king
+	 * This is a snapshot built from the bitboards. It is null on Boards created
+	 * internally during move generation until {@link #toArray()} is called, and
+	 * writes to it are not reflected back into the position.
 	 */
 	public int board[][];
-	
+
 	/**
 	 * The dimensions of the square board.
 	 */
 	public static final int BOARDSIZE = 8;
-	
+
 	/**How many rows to fill with pieces at initialization*/
 	public static final int STARTROWS = 3;
-	
+
+	/**The number of playable (dark) squares, and so the width of the bitboards.*/
+	public static final int SQUARES = 32;
+
+	/**Squares on which a P1 piece is crowned (j == BOARDSIZE-1).*/
+	public static final int P1_KING_ROW = 0x80808080;
+
+	/**Squares on which a P2 piece is crowned (j == 0).*/
+	public static final int P2_KING_ROW = 0x01010101;
+
+	/**
+	 * The square one diagonal step from each playable square, -1 off the board, indexed
+	 * [direction][square]. Directions 0 to 3 are (di,dj) = (1,1), (-1,1), (1,-1), (-1,-1),
+	 * so 0 and 1 are forward for P1 and 2 and 3 forward for P2.
+	 */
+	protected static final int[][] NEIGHBOR = Geometry.of(BOARDSIZE).neighbor;
+
+	/**The square two diagonal steps from each playable square, where a jump lands, -1 off the board*/
+	protected static final int[][] JUMP = Geometry.of(BOARDSIZE).jump;
+
 	/**True if P1's turn, false if P2's*/
 	public boolean p1Turn;
-	
+
 	/**The number of moves to reach this state*/
 	protected int depth;
 
+	/**Bitboard of P1's pieces (men and kings). Bit s is set if square s holds one.*/
+	protected int p1;
+
+	/**Bitboard of P2's pieces (men and kings). Bit s is set if square s holds one.*/
+	protected int p2;
+
+	/**Bitboard of kings of either colour.*/
+	protected int kings;
+
+	/**Zobrist hash of the pieces, kept up to date incrementally. The side to move is folded in by getHash().*/
+	protected long hash;
+
 	/**
 	 * The default consructor. Creates a initialized board.
 	 */
@@ -53,15 +91,41 @@ public class Board {
 		for (int i = 0; i < BOARDSIZE; i++)
 			for (int j = 0; j < BOARDSIZE; j++)
 				board[i][j] = nb[i][j];
+		for (int s = 0; s < SQUARES; s++){
+			int v = nb[squareRow(s)][squareCol(s)];
+			if (v > 0)
+				p1 |= 1 << s;
+			else if (v < 0)
+				p2 |= 1 << s;
+			if ((v == 2) || (v == -2))
+				kings |= 1 << s;
+		}
+		hash = Zobrist.hash(p1, p2, kings);
 	}
-	
+
 	/**
 	 * Creates a copy of the passed in board
 	 */
 	public Board(Board b){
-		this(b.board);
+		this(b.p1, b.p2, b.kings, b.hash);
 		depth = b.depth;
 		p1Turn = b.p1Turn;
+		toArray();
+	}
+
+	/**
+	 * Creates a packed Board from its bitboards. The int[][] form is left unbuilt.
+	 * Other fields must be set prior to access.
+	 * @param p1 P1's pieces
+	 * @param p2 P2's pieces
+	 * @param kings The kings of either colour
+	 * @param hash The Zobrist hash of these pieces (see {@link Zobrist#hash(int, int, int)})
+	 */
+	protected Board(int p1, int p2, int kings, long hash){
+		this.p1 = p1;
+		this.p2 = p2;
+		this.kings = kings;
+		this.hash = hash;
 	}
 
 	/**
@@ -69,31 +133,53 @@ public class Board {
 	 *
 	 */
 	protected void reset(){
-		int counter = 0;
-		for (int i = 0; i < BOARDSIZE; i++){
-			int j = 0;
-			for (j = 0; j < STARTROWS; j++){
-				if (counter % 2 == 0){
-					board[i][j] = 1;
-				}
-				else{
-					board[i][j] = 0;
-				}
-				counter++;
-			}
-			for (j = BOARDSIZE-STARTROWS; j < BOARDSIZE; j++){
-				if (counter % 2 == 0){
-					board[i][j] = -1;
-				}
-				else{
-					board[i][j] = 0;
-				}
-				counter++;
-			}
-			counter++;
+		p1 = 0;
+		p2 = 0;
+		kings = 0;
+		for (int s = 0; s < SQUARES; s++){
+			int j = squareCol(s);
+			if (j < STARTROWS)
+				p1 |= 1 << s;
+			else if (j >= BOARDSIZE-STARTROWS)
+				p2 |= 1 << s;
+		}
+		hash = Zobrist.hash(p1, p2, kings);
+		if (board != null){
+			board = null;
+			toArray();
 		}
 	}
 
+	/**
+	 * Gets the playable square index of (i,j).
+	 * @param i The y coord
+	 * @param j The x coord
+	 * @return The square index in [0, SQUARES), or -1 if (i,j) is off the board or not playable
+	 */
+	public static int square(int i, int j){
+		if ((i < 0) || (i >= BOARDSIZE) || (j < 0) || (j >= BOARDSIZE) || (((i + j) & 1) != 0))
+			return -1;
+		return (i << 2) | (j >> 1);
+	}
+
+	/**
+	 * Gets the y coord of a playable square.
+	 * @param s The square index
+	 * @return The y coord (first array index) of s
+	 */
+	public static int squareRow(int s){
+		return s >> 2;
+	}
+
+	/**
+	 * Gets the x coord of a playable square.
+	 * @param s The square index
+	 * @return The x coord (second array index) of s
+	 */
+	public static int squareCol(int s){
+		return ((s & 3) << 1) | ((s >> 2) & 1);
+	}
+
 	/**
 	 * Tries to move the piece at (i,j) to (i+iInc, j+jInc).
 	 * @param i The y coord of the piece
@@ -103,22 +189,25 @@ public class Board {
 	 * @return The new board state if move occurred, null else.
 	 */
 	protected Board move(int i, int j, int iInc, int jInc){
-		if ((i+iInc < 0) || 
-				(i+iInc >= BOARDSIZE) || 
-				(j+jInc < 0) || 
-				(j+jInc >= BOARDSIZE) || 
-				(board[i][j]==0) || 
-				(board[i+iInc][j+jInc]!=0) || 
-				(iInc > 1) || 
-				(jInc > 1))
+		int from = square(i, j);
+		if ((from < 0) || (Math.abs(iInc) != 1) || (Math.abs(jInc) != 1))
+			return null;
+		return move(from, direction(iInc, jInc));
+	}
+
+	/**
+	 * Tries to move the piece on square from one step in direction d.
+	 * @param from The square of the piece
+	 * @param d The direction, as in {@link #NEIGHBOR}
+	 * @return The new board state if move occurred, null else.
+	 */
+	protected Board move(int from, int d){
+		int to = NEIGHBOR[d][from];
+		int occupied = p1 | p2;
+		if ((to < 0) || ((occupied & (1 << from)) == 0) || ((occupied & (1 << to)) != 0))
 			return null;
-		Board nb = new Board(board);
-		nb.board[i+iInc][j+jInc] = nb.board[i][j];
-		nb.board[i][j] = 0;
-		if ((nb.board[i+iInc][j+jInc] == 1) && (j+jInc == BOARDSIZE -1))
-			nb.board[i+iInc][j+jInc] = 2;
-		if ((nb.board[i+iInc][j+jInc] == -1) && (j+jInc == 0))
-			nb.board[i+iInc][j+jInc] = -2;
+		Board nb = new Board(p1, p2, kings, hash);
+		nb.relocate(from, to);
 		return nb;
 	}
 
@@ -131,30 +220,244 @@ public class Board {
 	 * @return The new board state if jump occurred, null else.
 	 */
 	protected Board jump(int i, int j, int iInc, int jInc){
-		int i2 = iInc*2;
-		int j2 = jInc*2;
-		if ((i+i2 < 0) || 
-				(i+i2 >= BOARDSIZE) || 
-				(j+j2 < 0) || 
-				(j+j2 >= BOARDSIZE) || 
-				(board[i][j]==0) || 
-				(board[i+i2][j+j2]!=0) ||
-				((board[i][j] < 0) && (board[i+iInc][j+jInc] <= 0)) ||
-				((board[i][j] > 0) && (board[i+iInc][j+jInc] >= 0)) ||
-				(iInc > 1) || 
-				(jInc > 1))
+		int from = square(i, j);
+		if ((from < 0) || (Math.abs(iInc) != 1) || (Math.abs(jInc) != 1))
+			return null;
+		return jump(from, direction(iInc, jInc));
+	}
+
+	/**
+	 * Tries to jump the piece next to square from in direction d using the piece on from.
+	 * @param from The square of the jumping piece
+	 * @param d The direction, as in {@link #NEIGHBOR}
+	 * @return The new board state if jump occurred, null else.
+	 */
+	protected Board jump(int from, int d){
+		int to = JUMP[d][from];
+		if (to < 0)
 			return null;
-		Board nb = new Board(board);
-		nb.board[i+i2][j+j2] = nb.board[i][j];
-		nb.board[i+iInc][j+jInc] = 0;
-		nb.board[i][j] = 0;
-		if ((nb.board[i+i2][j+j2] == 1) && (j+j2 == BOARDSIZE -1))
-			nb.board[i+i2][j+j2] = 2;
-		if ((nb.board[i+i2][j+j2] == -1) && (j+j2 == 0))
-			nb.board[i+i2][j+j2] = -2;
+		int over = NEIGHBOR[d][from];
+		int fromBit = 1 << from;
+		int overBit = 1 << over;
+		int toBit = 1 << to;
+		if (((p1 | p2) & toBit) != 0)
+			return null;
+		if (!((((p1 & fromBit) != 0) && ((p2 & overBit) != 0)) ||
+				(((p2 & fromBit) != 0) && ((p1 & overBit) != 0))))
+			return null;
+		Board nb = new Board(p1 & ~overBit, p2 & ~overBit, kings & ~overBit, hash ^ Zobrist.key(kind(over), over));
+		nb.relocate(from, to);
 		return nb;
 	}
 
+	/**
+	 * @return The direction, as in {@link #NEIGHBOR}, of the step (iInc, jInc), each +/- 1
+	 */
+	private static int direction(int iInc, int jInc){
+		return ((iInc < 0) ? 1 : 0) | ((jInc < 0) ? 2 : 0);
+	}
+
+	/**
+	 * Moves whatever occupies from to the empty square to, crowning it if it lands on
+	 * its king row.
+	 * @param from The square being vacated
+	 * @param to The square being filled
+	 */
+	private void relocate(int from, int to){
+		int fromBit = 1 << from;
+		int toBit = 1 << to;
+		int both = fromBit | toBit;
+		hash ^= Zobrist.key(kind(from), from);
+		if ((p1 & fromBit) != 0){
+			p1 ^= both;
+			if ((toBit & P1_KING_ROW) != 0)
+				kings |= fromBit;
+		}
+		else{
+			p2 ^= both;
+			if ((toBit & P2_KING_ROW) != 0)
+				kings |= fromBit;
+		}
+		if ((kings & fromBit) != 0)
+			kings ^= both;
+		hash ^= Zobrist.key(kind(to), to);
+		board = null;
+	}
+
+	/**
+	 * Gets the Zobrist piece kind on an occupied square.
+	 * @param s The square index
+	 * @return One of Zobrist.P1_MAN, P1_KING, P2_MAN, P2_KING
+	 */
+	private int kind(int s){
+		int k = ((p1 >> s) & 1) != 0 ? Zobrist.P1_MAN : Zobrist.P2_MAN;
+		return k + ((kings >> s) & 1);
+	}
+
+	/**
+	 * XORs the keys of the mover on from and to, and of every captured piece, into the hash.
+	 * Called with the same arguments before and after a move it updates or restores the hash.
+	 * @param from The square the mover starts on
+	 * @param fromKind The kind of the mover before the move
+	 * @param to The square the mover ends on
+	 * @param toKind The kind of the mover after the move
+	 * @param captured Bitboard of the pieces taken
+	 * @param capturedKings The kings among them
+	 * @param capturedP1 True if the captured pieces are P1's
+	 */
+	private void toggle(int from, int fromKind, int to, int toKind, int captured, int capturedKings, boolean capturedP1){
+		hash ^= Zobrist.key(fromKind, from) ^ Zobrist.key(toKind, to);
+		int man = capturedP1 ? Zobrist.P1_MAN : Zobrist.P2_MAN;
+		for (int c = captured; c != 0; c &= c - 1){
+			int s = Integer.numberOfTrailingZeros(c);
+			hash ^= Zobrist.key(man + ((capturedKings >> s) & 1), s);
+		}
+	}
+
+	/**
+	 * Plays an encoded move (see {@link Move}) on this board in place, passing the turn
+	 * and incrementing the depth. The int[][] form is dropped and rebuilt on demand.
+	 * @param m A move generated for this board
+	 * @return The undo information to hand back to {@link #unmakeMove(long, int)}
+	 */
+	public int makeMove(long m){
+		int from = Move.from(m);
+		int to = Move.to(m);
+		int fromBit = 1 << from;
+		int toBit = 1 << to;
+		int captured = Move.captured(m);
+		int undo = kings & captured;
+		int fromKind = kind(from);
+		toggle(from, fromKind, to, Move.isPromotion(m) ? fromKind + 1 : fromKind, captured, undo, !p1Turn);
+		if (p1Turn){
+			p1 = (p1 & ~fromBit) | toBit;
+			p2 &= ~captured;
+		}
+		else{
+			p2 = (p2 & ~fromBit) | toBit;
+			p1 &= ~captured;
+		}
+		if (((kings & fromBit) != 0) || Move.isPromotion(m))
+			kings = (kings & ~fromBit & ~captured) | toBit;
+		else
+			kings &= ~captured;
+		p1Turn = !p1Turn;
+		depth++;
+		board = null;
+		return undo;
+	}
+
+	/**
+	 * Takes back a move played with {@link #makeMove(long)}.
+	 * @param m The move that was played
+	 * @param undo The value makeMove returned for it
+	 */
+	public void unmakeMove(long m, int undo){
+		int from = Move.from(m);
+		int to = Move.to(m);
+		int fromBit = 1 << from;
+		int toBit = 1 << to;
+		int captured = Move.captured(m);
+		int toKind = kind(to);
+		toggle(from, Move.isPromotion(m) ? toKind - 1 : toKind, to, toKind, captured, undo, p1Turn);
+		p1Turn = !p1Turn;
+		depth--;
+		boolean wasKing = ((kings & toBit) != 0) && !Move.isPromotion(m);
+		if (p1Turn){
+			p1 = (p1 & ~toBit) | fromBit;
+			p2 |= captured;
+		}
+		else{
+			p2 = (p2 & ~toBit) | fromBit;
+			p1 |= captured;
+		}
+		kings = (kings & ~toBit) | undo;
+		if (wasKing)
+			kings |= fromBit;
+		board = null;
+	}
+
+	/**
+	 * Gets the piece at (i,j), using the same key as {@link #board}.
+	 * @param i The y coord
+	 * @param j The x coord
+	 * @return The piece at (i,j), 0 if empty or not a playable square
+	 */
+	public int get(int i, int j){
+		int s = square(i, j);
+		if (s < 0)
+			return 0;
+		int bit = 1 << s;
+		int v;
+		if ((p1 & bit) != 0)
+			v = 1;
+		else if ((p2 & bit) != 0)
+			v = -1;
+		else
+			return 0;
+		if ((kings & bit) != 0)
+			v *= 2;
+		return v;
+	}
+
+	/**
+	 * Builds the int[][] form of this board if it is not already built.
+	 * @return {@link #board}
+	 */
+	public int[][] toArray(){
+		if (board == null)
+			fillArray();
+		return board;
+	}
+
+	/**
+	 * Writes the position into {@link #board}, reusing the array if there is one.
+	 */
+	protected void fillArray(){
+		BoardPool.check(this);
+		if (board == null)
+			board = new int[BOARDSIZE][BOARDSIZE];
+		for (int s = 0; s < SQUARES; s++)
+			board[squareRow(s)][squareCol(s)] = get(squareRow(s), squareCol(s));
+	}
+
+	/**
+	 * Gets P1's pieces as a bitboard over the playable squares.
+	 * @return Bitboard of P1's men and kings
+	 */
+	public int getP1Pieces(){
+		BoardPool.check(this);
+		return p1;
+	}
+
+	/**
+	 * Gets P2's pieces as a bitboard over the playable squares.
+	 * @return Bitboard of P2's men and kings
+	 */
+	public int getP2Pieces(){
+		BoardPool.check(this);
+		return p2;
+	}
+
+	/**
+	 * Gets the kings of both players as a bitboard over the playable squares.
+	 * @return Bitboard of all kings
+	 */
+	public int getKings(){
+		BoardPool.check(this);
+		return kings;
+	}
+
+	/**
+	 * Gets the 64-bit Zobrist hash of this position, including the side to move. Equal
+	 * positions reached by different move orders have equal hashes.
+	 * @return The position hash
+	 */
+	public long getHash(){
+		BoardPool.check(this);
+		return p1Turn ? hash : hash ^ Zobrist.P2_TO_MOVE;
+	}
+
 	/**
 	 * Gets the number of moves used to reach this state.
 	 * @return number of moves used to reach this state.
@@ -175,7 +478,7 @@ public class Board {
 		char c = ' ';
 		for (int i = 0; i < BOARDSIZE; i++){
 			for (int j = 0; j < BOARDSIZE; j++){
-				switch(board[i][j]){
+				switch(get(i, j)){
 				case -2:
 					c = 'B';
 					break;
@@ -198,28 +501,20 @@ public class Board {
 		}
 		System.out.print("\n\n");
 	}
-	
+
 	/**
 	 * Sees whether all of p2's pieces have been eliminated.
 	 * @return true if no pieces of p2 remain, false else
 	 */
 	public boolean p1win(){
-		for (int i = 0; i < BOARDSIZE; i++)
-			for (int j = 0; j < BOARDSIZE; j++)
-				if (board[i][j] < 0)
-					return false;
-		return true;
+		return p2 == 0;
 	}
-	
+
 	/**
 	 * Sees whether all of p1's pieces have been eliminated.
 	 * @return true if no pieces of p1 remain, false else
 	 */
 	public boolean p2win(){
-		for (int i = 0; i < BOARDSIZE; i++)
-			for (int j = 0; j < BOARDSIZE; j++)
-				if (board[i][j] > 0)
-					return false;
-		return true;
+		return p1 == 0;
 	}
 }
@@ -41,95 +41,70 @@ public class BoardManipulator {
 	 */
 	protected Vector<Board> expand(){	
 		moves = new Vector <Board> ();
-
-		for (int i = 0; i<8; i++){
-			for (int j = 0; j<8; j++){
-				if ((p1Turn && (board.board[i][j] > 0)) ||
-						((!p1Turn && (board.board[i][j] == -2)))){
-					jumpPiece(i,j,1,1);
-					jumpPiece(i,j,-1,1);
-					if (!isJump)
-						movePiece(i,j,1);
-				}
-				if ((!p1Turn && (board.board[i][j] < 0)) ||
-						((p1Turn && (board.board[i][j] == 2)))){
-					jumpPiece(i,j,1,-1);
-					jumpPiece(i,j,-1,-1);
-					if (!isJump)
-						movePiece(i,j,-1);
-				}				
+		int own = p1Turn ? board.p1 : board.p2;
+		for (int pieces = own; pieces != 0; pieces &= pieces - 1){
+			int s = Integer.numberOfTrailingZeros(pieces);
+			boolean king = (board.kings & (1 << s)) != 0;
+			if (p1Turn || king){
+				jumpPiece(s, 0, board);
+				jumpPiece(s, 1, board);
+				if (!isJump)
+					movePiece(s, 0);
+			}
+			if (!p1Turn || king){
+				jumpPiece(s, 2, board);
+				jumpPiece(s, 3, board);
+				if (!isJump)
+					movePiece(s, 2);
 			}
 		}
 		return moves;
 	}
 
 	/**
-	 * Attempts to move the piece at (i,j) to (i +/- 1, j+d). If successful, added to moves.
-	 * @param i The y coord of the piece
-	 * @param j The x coord of the piece
-	 * @param d The direction of movement
+	 * Attempts to move the piece on square s one step in each of a pair of directions.
+	 * Each move that succeeds is added to moves.
+	 * @param s The square of the piece
+	 * @param forward Where the pair starts in Geometry.STEP_ORDER: 0 for the steps towards larger x, 2 towards smaller x
 	 */
-	private void movePiece(int i, int j, int d){
-		Board nb = board.move(i, j, -1, d);
-		if (nb != null){
-			addMove(nb);
-		}
-
-		nb = board.move(i, j, 1, d);
-		if (nb != null){
-			addMove(nb);
+	private void movePiece(int s, int forward){
+		for (int k = forward; k < forward + 2; k++){
+			Board nb = board.move(s, Geometry.STEP_ORDER[k]);
+			if (nb != null)
+				addMove(nb);
 		}
 	}
 
 	/**
-	 * Attempts to jump the piece at (i+lr, j+d) using the piece at (i,j).
-	 * @param i The y coord of the jumping piece
-	 * @param j The x coord of the jumping piece
-	 * @param lr Jump to left(-1) or right (1)?
-	 * @param d Direction of jump, forward or back?
-	 */
-	private void jumpPiece(int i, int j, int lr, int d){
-		jumpPiece(i, j, lr, d, board);
-	}
-	
-	/**
-	 * Attempts to jump the piece at (i+lr, j+d) using the piece at (i,j) on board b. If successful, it recursively attempts to keep jumping. All valid jump sequences are added to moves. If it is the first jump found, moves is cleared to force the jump.
-	 * @param i The y coord of the jumping piece
-	 * @param j The x coord of the jumping piece
-	 * @param lr Jump to left(-1) or right (1)?
-	 * @param d Direction of jump, forward or back?
+	 * Attempts to jump from square s in direction d on board b. If successful, it recursively attempts to keep jumping. All valid jump sequences are added to moves. If it is the first jump found, moves is cleared to force the jump.
+	 * @param s The square of the jumping piece
+	 * @param d The direction of the jump, as in {@link Board#NEIGHBOR}
 	 * @param b The board to check
 	 * @return True if jump occurs, false else.
 	 */
-	private boolean jumpPiece(int i, int j, int lr, int d, Board b){
-		Board nb  = b.jump(i, j, lr, d);
+	private boolean jumpPiece(int s, int d, Board b){
+		Board nb = b.jump(s, d);
+		if (nb == null)
+			return false;
+		int to = Board.JUMP[d][s];
+		boolean king = (nb.kings & (1 << to)) != 0;
 		boolean moreJumps = false;
-		i=i+2*lr;
-		j=j+2*d;
-		
-		if (nb != null){
-			if ((p1Turn && (nb.board[i][j] > 0)) ||
-					((!p1Turn && (nb.board[i][j] == -2)))){
-				moreJumps = jumpPiece(i,j,1,1,nb) || moreJumps;
-				moreJumps = jumpPiece(i,j,-1,1,nb) || moreJumps;
-			}
-			if ((!p1Turn && (nb.board[i][j] < 0)) ||
-					((p1Turn && (nb.board[i][j] == 2)))){
-				moreJumps = jumpPiece(i,j,1,-1,nb) || moreJumps;
-				moreJumps = jumpPiece(i,j,-1,-1,nb) || moreJumps;
-			}
-			if (!moreJumps){
-				if (!isJump){
-					moves = new Vector<Board>();
-					isJump = true;
-				}
-				addMove(nb);
-			}
-			return true;
+		if (p1Turn || king){
+			moreJumps = jumpPiece(to, 0, nb) || moreJumps;
+			moreJumps = jumpPiece(to, 1, nb) || moreJumps;
 		}
-		else{
-			return false;
+		if (!p1Turn || king){
+			moreJumps = jumpPiece(to, 2, nb) || moreJumps;
+			moreJumps = jumpPiece(to, 3, nb) || moreJumps;
+		}
+		if (!moreJumps){
+			if (!isJump){
+				moves = new Vector<Board>();
+				isJump = true;
+			}
+			addMove(nb);
 		}
+		return true;
 	}
 	
 	/**
@@ -141,4 +116,109 @@ public class BoardManipulator {
 		b.p1Turn = !p1Turn;
 		moves.add(b);
 	}
+
+	/**
+	 * Writes the moves available on b into buf as encoded moves (see {@link Move}),
+	 * without allocating. Moves come out in exactly the order expand() produces the
+	 * corresponding Boards, so the i-th entry written is action i.
+	 * @param b The board to generate moves for
+	 * @param buf The buffer to fill, with room for {@link Move#MAX_MOVES} entries from offset
+	 * @param offset The first index of buf to write
+	 * @return The number of moves written
+	 */
+	protected static int generate(Board b, long[] buf, int offset){
+		int own = b.p1Turn ? b.p1 : b.p2;
+		int n = offset;
+		for (int pieces = own; pieces != 0; pieces &= pieces - 1)
+			n += pieceMoves(b, Integer.numberOfTrailingZeros(pieces), true, buf, n);
+		if (n > offset)
+			return n - offset;
+		for (int pieces = own; pieces != 0; pieces &= pieces - 1)
+			n += pieceMoves(b, Integer.numberOfTrailingZeros(pieces), false, buf, n);
+		return n - offset;
+	}
+
+	/**
+	 * Expands a board into Boards taken from a pool, in the same order as expand().
+	 * @param b The board
+	 * @param pool The pool to take the successors from
+	 * @param out The array to fill, with room for at least {@link Move#MAX_MOVES} Boards
+	 * @return The number of successors written
+	 */
+	protected static int expand(Board b, BoardPool pool, Board[] out){
+		long[] moves = pool.moves;
+		int n = generate(b, moves, 0);
+		for (int k = 0; k < n; k++)
+			out[k] = pool.child(b, moves[k]);
+		return n;
+	}
+
+	/**
+	 * Writes the moves of one piece of the side to move, in the order generate writes
+	 * them: generate calls this for each piece in square order, jumps first.
+	 * @param b The board
+	 * @param s The square of the piece
+	 * @param jumping True for the piece's jump sequences, false for its simple moves
+	 * @param buf The buffer to fill
+	 * @param offset The first index of buf to write
+	 * @return The number of moves written
+	 */
+	protected static int pieceMoves(Board b, int s, boolean jumping, long[] buf, int offset){
+		boolean p1 = b.p1Turn;
+		int opp = p1 ? b.p2 : b.p1;
+		int occupied = b.p1 | b.p2;
+		boolean king = (b.kings & (1 << s)) != 0;
+		if (jumping)
+			return jumps(s, s, p1, king, king, occupied, opp, 0, buf, offset) - offset;
+		int n = offset;
+		int first = (p1 || king) ? 0 : 2;
+		int last = (!p1 || king) ? 4 : 2;
+		for (int k = first; k < last; k++){
+			int to = Board.NEIGHBOR[Geometry.STEP_ORDER[k]][s];
+			if ((to < 0) || ((occupied & (1 << to)) != 0))
+				continue;
+			boolean promotion = !king && (((1 << to) & (p1 ? Board.P1_KING_ROW : Board.P2_KING_ROW)) != 0);
+			buf[n++] = Move.encode(s, to, 0, promotion);
+		}
+		return n - offset;
+	}
+
+	/**
+	 * Follows every jump sequence of the piece now on s, writing one move per complete
+	 * sequence. This mirrors jumpPiece(int, int, int, int, Board): captured pieces are
+	 * lifted immediately and a man crowned mid-sequence carries on jumping as a king.
+	 * @param from The square the sequence started on
+	 * @param s The square the jumping piece is on now
+	 * @param p1 True if the jumping piece is P1's
+	 * @param wasKing True if the piece was a king before the sequence
+	 * @param king True if the piece is a king now
+	 * @param occupied Bitboard of all pieces at this point of the sequence
+	 * @param opp Bitboard of the opponent's remaining pieces
+	 * @param captured Bitboard of the pieces taken so far
+	 * @param buf The move buffer
+	 * @param n The next free index of buf
+	 * @return The next free index of buf after this sequence's moves are written
+	 */
+	private static int jumps(int from, int s, boolean p1, boolean wasKing, boolean king,
+			int occupied, int opp, int captured, long[] buf, int n){
+		int first = (p1 || king) ? 0 : 2;
+		int last = (!p1 || king) ? 4 : 2;
+		for (int d = first; d < last; d++){
+			int to = Board.JUMP[d][s];
+			if (to < 0)
+				continue;
+			int over = Board.NEIGHBOR[d][s];
+			if (((opp & (1 << over)) == 0) || ((occupied & (1 << to)) != 0))
+				continue;
+			int overBit = 1 << over;
+			int toBit = 1 << to;
+			boolean crowned = king || ((toBit & (p1 ? Board.P1_KING_ROW : Board.P2_KING_ROW)) != 0);
+			int next = jumps(from, to, p1, wasKing, crowned, (occupied & ~overBit & ~(1 << s)) | toBit,
+					opp & ~overBit, captured | overBit, buf, n);
+			if (next == n)
+				buf[next++] = Move.encode(from, to, captured | overBit, crowned && !wasKing);
+			n = next;
+		}
+		return n;
+	}
 }
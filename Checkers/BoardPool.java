@@ -0,0 +1,155 @@
+package Checkers;
+
+import java.util.Arrays;
+
+/**
+ * Reusable successor Boards for one search thread. See {@link Game#expand(Board, Board[])}.
+ * <p>
+ * The pool is an arena: Boards are handed out from the top of a growing array and given
+ * back in bulk, either down to a mark or all at once. A depth-first search takes a mark
+ * before expanding a node and releases to it once the node's children are searched, so
+ * the pool never holds more than the Boards on the current path and their siblings, and
+ * after the first few nodes a search allocates no Boards at all. Each pooled Board keeps
+ * its int[][] form, which is refilled in place when the Board is reused. Everything is
+ * released when the game moves on: the first use of a pool after a move is played
+ * releases the Boards handed out during the previous move.
+ * <p>
+ * Run with -Dcheckers.pool.debug=true to catch Boards used after release. In that mode a
+ * released Board is never reused but poisoned instead, and expanding it, reading its
+ * pieces or building its int[][] form throws an IllegalStateException. Copies of the
+ * int[][] form taken before the release are not caught.
+ * <p>
+ * A pool belongs to one thread; GameSession keeps one per thread that asks for it.
+ * @author mhtong
+ *
+ */
+public class BoardPool {
+	/**True to poison released Boards instead of reusing them*/
+	public static final boolean DEBUG = Boolean.getBoolean("checkers.pool.debug");
+
+	/**The bitboard a released Board's pieces are set to in debug mode: both sides on every square*/
+	private static final int POISON = -1;
+
+	/**Every Board the pool owns; those below used are handed out*/
+	private Board[] boards = new Board[256];
+
+	/**The number of Boards handed out*/
+	private int used;
+
+	/**The number of Boards the pool has allocated*/
+	private long allocated;
+
+	/**The move of the game the handed out Boards belong to*/
+	private int epoch;
+
+	/**Scratch for the moves of the board being expanded, and of the piece a Successors is generating*/
+	final long[] moves = new long[Move.MAX_MOVES];
+
+	/**
+	 * Creates an empty pool.
+	 */
+	public BoardPool(){
+	}
+
+	/**
+	 * Marks the current top of the pool.
+	 * @return The mark, to hand back to {@link #release(int)}
+	 */
+	public int mark(){
+		return used;
+	}
+
+	/**
+	 * Releases every Board handed out since a mark was taken. They must not be used again.
+	 * @param mark A value returned by mark() since the last releaseAll
+	 */
+	public void release(int mark){
+		if ((mark < 0) || (mark > used))
+			throw new IllegalArgumentException("Mark " + mark + " is not in the pool");
+		if (DEBUG){
+			for (int k = mark; k < used; k++){
+				poison(boards[k]);
+				boards[k] = null;
+			}
+		}
+		used = mark;
+	}
+
+	/**
+	 * Releases every Board handed out.
+	 */
+	public void releaseAll(){
+		release(0);
+	}
+
+	/**
+	 * @return The number of Boards handed out and not yet released
+	 */
+	public int size(){
+		return used;
+	}
+
+	/**
+	 * @return The number of Boards the pool has allocated since it was created
+	 */
+	public long getAllocated(){
+		return allocated;
+	}
+
+	/**
+	 * Releases everything if the game has moved on since the pool was last used.
+	 * @param move The number of moves played in the game
+	 */
+	void sync(int move){
+		if (move != epoch){
+			releaseAll();
+			epoch = move;
+		}
+	}
+
+	/**
+	 * Hands out a Board set to the position after a move.
+	 * @param parent The board the move is played on
+	 * @param m The move
+	 * @return A pooled Board, int[][] form built
+	 */
+	Board child(Board parent, long m){
+		if (used == boards.length)
+			boards = Arrays.copyOf(boards, 2 * used);
+		Board b = boards[used];
+		if (b == null){
+			b = new Board(0, 0, 0, 0);
+			boards[used] = b;
+			allocated++;
+		}
+		used++;
+		int[][] array = b.board;
+		b.p1 = parent.p1;
+		b.p2 = parent.p2;
+		b.kings = parent.kings;
+		b.hash = parent.hash;
+		b.p1Turn = parent.p1Turn;
+		b.depth = parent.depth;
+		b.makeMove(m);
+		b.board = array;
+		b.fillArray();
+		return b;
+	}
+
+	/**
+	 * Throws if a Board has been released to a pool in debug mode. Does nothing otherwise.
+	 * @param b The board
+	 * @throws IllegalStateException If b was released
+	 */
+	public static void check(Board b){
+		if (DEBUG && (b.p1 == POISON) && (b.p2 == POISON))
+			throw new IllegalStateException("Board used after release to its BoardPool");
+	}
+
+	private static void poison(Board b){
+		b.p1 = POISON;
+		b.p2 = POISON;
+		b.kings = POISON;
+		b.board = null;
+	}
+}
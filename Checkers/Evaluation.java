@@ -0,0 +1,408 @@
+package Checkers;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * A static evaluation of checkers positions, kept up to date as moves are made and unmade.
+ * <p>
+ * Material, king, advancement and back rank terms are folded into one piece-square table
+ * per kind of piece, so making a move changes the score by a few table lookups: the
+ * piece leaving its square, arriving (perhaps crowned) on another, and the pieces it
+ * captured. Mobility, which depends on the whole neighbourhood, is counted from the bit
+ * masks when a position is evaluated. An instance tracks one board and is not thread
+ * safe; use {@link #Evaluation(Evaluation)} to give each thread its own copy of a set of
+ * weights.
+ * <p>
+ * Weights are read from a properties file:
+ * <pre>
+ * man = 100
+ * king = 150
+ * advance = 0 0 2 4 6 8 12 0
+ * backRank = 12
+ * mobility = 2
+ * </pre>
+ * advance gives a man's bonus by rows from its own back rank, backRank a bonus for men
+ * still guarding it, and mobility a bonus per empty square a piece could step to. Any
+ * weight left out keeps its default. Scores are from P1's point of view inside the
+ * tracker and from the side to move's point of view from evaluate.
+ * @author mhtong
+ *
+ */
+public class Evaluation {
+	/**The squares a piece can step to, by kind and square*/
+	private static final int[][] STEPS = new int[4][Board.SQUARES];
+
+	/**The deepest move stack needed*/
+	private static final int MAX_PLY = 256;
+
+	/**
+	 * The number of weights in the order of {@link #getWeights()}: man, king, the eight
+	 * advance bonuses, backRank and mobility.
+	 */
+	public static final int WEIGHTS = 12;
+
+	static{
+		for (int s = 0; s < Board.SQUARES; s++){
+			for (int d = 0; d < 4; d++){
+				if (Board.NEIGHBOR[d][s] < 0)
+					continue;
+				int bit = 1 << Board.NEIGHBOR[d][s];
+				if (d < 2)
+					STEPS[Zobrist.P1_MAN][s] |= bit;
+				else
+					STEPS[Zobrist.P2_MAN][s] |= bit;
+				STEPS[Zobrist.P1_KING][s] |= bit;
+				STEPS[Zobrist.P2_KING][s] |= bit;
+			}
+		}
+	}
+
+	/**Value of a man*/
+	protected int man = 100;
+
+	/**Value of a king*/
+	protected int king = 150;
+
+	/**Bonus for a man by rows from its own back rank*/
+	protected int[] advance = {0, 0, 2, 4, 6, 8, 12, 0};
+
+	/**Bonus for a man on its own back rank*/
+	protected int backRank = 12;
+
+	/**Bonus per square a piece can step to*/
+	protected int mobility = 2;
+
+	/**Piece-square values by kind, from P1's point of view (P2's kinds are negative)*/
+	private final int[][] table = new int[4][Board.SQUARES];
+
+	/**The tracked score, from P1's point of view*/
+	private int score;
+
+	/**The score change of each move made, to undo it*/
+	private final int[] stack = new int[MAX_PLY];
+
+	/**Moves made since reset*/
+	private int top;
+
+	/**
+	 * Creates an evaluation with the default weights.
+	 */
+	public Evaluation(){
+		build();
+	}
+
+	/**
+	 * Creates an evaluation with the same weights as another, tracking no board yet.
+	 * @param e The evaluation to copy the weights of
+	 */
+	public Evaluation(Evaluation e){
+		man = e.man;
+		king = e.king;
+		advance = e.advance.clone();
+		backRank = e.backRank;
+		mobility = e.mobility;
+		build();
+	}
+
+	/**
+	 * Creates an evaluation from a set of weights.
+	 * @param weights The weights, as described above
+	 */
+	public Evaluation(Properties weights){
+		man = Integer.parseInt(weights.getProperty("man", "" + man).trim());
+		king = Integer.parseInt(weights.getProperty("king", "" + king).trim());
+		backRank = Integer.parseInt(weights.getProperty("backRank", "" + backRank).trim());
+		mobility = Integer.parseInt(weights.getProperty("mobility", "" + mobility).trim());
+		String a = weights.getProperty("advance");
+		if (a != null){
+			String[] v = a.trim().split("\\s+");
+			for (int r = 0; (r < v.length) && (r < advance.length); r++)
+				advance[r] = Integer.parseInt(v[r]);
+		}
+		build();
+	}
+
+	/**
+	 * Creates an evaluation from a weight vector.
+	 * @param weights WEIGHTS values in the order of {@link #getWeights()}
+	 */
+	public Evaluation(int[] weights){
+		man = weights[0];
+		king = weights[1];
+		System.arraycopy(weights, 2, advance, 0, advance.length);
+		backRank = weights[10];
+		mobility = weights[11];
+		build();
+	}
+
+	/**
+	 * @return The weights as a vector: man, king, advance[0..7], backRank, mobility
+	 */
+	public int[] getWeights(){
+		int[] w = new int[WEIGHTS];
+		w[0] = man;
+		w[1] = king;
+		System.arraycopy(advance, 0, w, 2, advance.length);
+		w[10] = backRank;
+		w[11] = mobility;
+		return w;
+	}
+
+	/**
+	 * Gets how much each weight counts in a position. The score is linear in the weights:
+	 * from P1's point of view it is the sum of each weight times its coefficient, so a
+	 * tuner can fit the weights without rebuilding tables.
+	 * @param b The board
+	 * @param out Receives WEIGHTS coefficients, in the order of {@link #getWeights()}
+	 */
+	public static void coefficients(Board b, int[] out){
+		Arrays.fill(out, 0);
+		for (int rest = b.p1 | b.p2; rest != 0; rest &= rest - 1){
+			int s = Integer.numberOfTrailingZeros(rest);
+			int sign = ((b.p1 & (1 << s)) != 0) ? 1 : -1;
+			if ((b.kings & (1 << s)) != 0){
+				out[1] += sign;
+				continue;
+			}
+			int row = (sign > 0) ? Board.squareCol(s) : Board.BOARDSIZE - 1 - Board.squareCol(s);
+			out[0] += sign;
+			out[2 + row] += sign;
+			if (row == 0)
+				out[10] += sign;
+		}
+		out[11] = mobility(b, b.p1) - mobility(b, b.p2);
+	}
+
+	/**
+	 * Reads weights from a properties file.
+	 * @param f The file
+	 * @return An evaluation using them
+	 * @throws IOException If the file cannot be read
+	 */
+	public static Evaluation load(File f) throws IOException{
+		Properties p = new Properties();
+		try (Reader in = new FileReader(f)){
+			p.load(in);
+		}
+		return new Evaluation(p);
+	}
+
+	/**
+	 * Writes this evaluation's weights to a properties file that load can read.
+	 * @param f The file
+	 * @throws IOException If the file cannot be written
+	 */
+	public void save(File f) throws IOException{
+		try (Writer out = new FileWriter(f)){
+			toProperties().store(out, "Checkers evaluation weights");
+		}
+	}
+
+	/**
+	 * @return This evaluation's weights
+	 */
+	public Properties toProperties(){
+		Properties p = new Properties();
+		p.setProperty("man", "" + man);
+		p.setProperty("king", "" + king);
+		p.setProperty("backRank", "" + backRank);
+		p.setProperty("mobility", "" + mobility);
+		StringBuilder sb = new StringBuilder();
+		for (int v:advance)
+			sb.append((sb.length() > 0) ? " " : "").append(v);
+		p.setProperty("advance", sb.toString());
+		return p;
+	}
+
+	/**
+	 * Fills the piece-square tables from the weights. P2's tables mirror P1's: square s
+	 * seen from the other side is square 31-s.
+	 */
+	private void build(){
+		for (int s = 0; s < Board.SQUARES; s++){
+			int row = Board.squareCol(s);
+			int v = man + advance[row] + ((row == 0) ? backRank : 0);
+			table[Zobrist.P1_MAN][s] = v;
+			table[Zobrist.P2_MAN][Board.SQUARES - 1 - s] = -v;
+			table[Zobrist.P1_KING][s] = king;
+			table[Zobrist.P2_KING][s] = -king;
+		}
+	}
+
+	/**
+	 * Starts tracking a board, scoring it from scratch.
+	 * @param b The board
+	 */
+	public void reset(Board b){
+		top = 0;
+		score = 0;
+		for (int rest = b.p1 | b.p2; rest != 0; rest &= rest - 1){
+			int s = Integer.numberOfTrailingZeros(rest);
+			score += table[kind(b, s)][s];
+		}
+	}
+
+	/**
+	 * Makes a move on the tracked board, updating the score.
+	 * @param b The tracked board
+	 * @param m The move, as generated for b
+	 * @return The value Board.makeMove returned, for unmakeMove
+	 */
+	public int makeMove(Board b, long m){
+		int from = Move.from(m);
+		int kind = kind(b, from);
+		int delta = table[Move.isPromotion(m) ? kind + 1 : kind][Move.to(m)] - table[kind][from];
+		for (int rest = Move.captured(m); rest != 0; rest &= rest - 1){
+			int s = Integer.numberOfTrailingZeros(rest);
+			delta -= table[kind(b, s)][s];
+		}
+		stack[top++] = delta;
+		score += delta;
+		return b.makeMove(m);
+	}
+
+	/**
+	 * Takes back the last move made with makeMove.
+	 * @param b The tracked board
+	 * @param m The move
+	 * @param undo The value makeMove returned
+	 */
+	public void unmakeMove(Board b, long m, int undo){
+		b.unmakeMove(m, undo);
+		score -= stack[--top];
+	}
+
+	/**
+	 * Scores the tracked board. The game is assumed not to be over.
+	 * @param b The tracked board
+	 * @return The score from the point of view of the side to move
+	 */
+	public int evaluate(Board b){
+		int s = score;
+		if (mobility != 0)
+			s += mobility * (mobility(b, b.p1) - mobility(b, b.p2));
+		return b.p1Turn ? s : -s;
+	}
+
+	/**
+	 * Scores a board from scratch, without disturbing the tracked one.
+	 * @param b The board
+	 * @return The score from the point of view of the side to move
+	 */
+	public int evaluateStatic(Board b){
+		int s = 0;
+		for (int rest = b.p1 | b.p2; rest != 0; rest &= rest - 1){
+			int q = Integer.numberOfTrailingZeros(rest);
+			s += table[kind(b, q)][q];
+		}
+		s += mobility * (mobility(b, b.p1) - mobility(b, b.p2));
+		return b.p1Turn ? s : -s;
+	}
+
+	/**
+	 * Gets the material value of a move's captures.
+	 * @param b The board the move is made on
+	 * @param m The move
+	 * @return The value of the captured pieces
+	 */
+	public int captureValue(Board b, long m){
+		int captured = Move.captured(m);
+		int kings = Integer.bitCount(captured & b.kings);
+		return man * (Integer.bitCount(captured) - kings) + king * kings;
+	}
+
+	/**
+	 * A static exchange estimate of a move: what it captures, less the moving piece if the
+	 * opponent can take it straight back on its landing square. It looks one reply deep,
+	 * so quiescence can order captures and skip obviously losing ones without searching.
+	 * @param b The board the move is made on, left unchanged
+	 * @param m The move
+	 * @return The estimated material gain for the side making the move
+	 */
+	public int exchange(Board b, long m){
+		int gain = captureValue(b, m);
+		int undo = b.makeMove(m);
+		int to = Move.to(m);
+		if (attacked(b, to, b.p1Turn))
+			gain -= ((b.kings & (1 << to)) != 0) ? king : man;
+		b.unmakeMove(m, undo);
+		return gain;
+	}
+
+	/**
+	 * Tells whether a side can jump the piece on a square on the current board.
+	 * @param b The board
+	 * @param s The square
+	 * @param byP1 True to ask about P1's pieces
+	 * @return true if a piece of that side is next to s with an empty square beyond
+	 */
+	public static boolean attacked(Board b, int s, boolean byP1){
+		int attackers = byP1 ? b.p1 : b.p2;
+		int empty = ~(b.p1 | b.p2);
+		for (int d = 0; d < 4; d++){
+			int a = Board.NEIGHBOR[3 - d][s];
+			int l = Board.NEIGHBOR[d][s];
+			if ((a < 0) || (l < 0) || ((attackers & (1 << a)) == 0) || ((empty & (1 << l)) == 0))
+				continue;
+			boolean forward = byP1 ? (d < 2) : (d >= 2);
+			if (forward || ((b.kings & (1 << a)) != 0))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Tells whether the side to move has a jump, without generating moves. A position
+	 * with no jump is quiet.
+	 * @param b The board
+	 * @return true if the side to move must capture
+	 */
+	public static boolean hasCapture(Board b){
+		int own = b.p1Turn ? b.p1 : b.p2;
+		int opp = b.p1Turn ? b.p2 : b.p1;
+		int empty = ~(b.p1 | b.p2);
+		for (int rest = own; rest != 0; rest &= rest - 1){
+			int s = Integer.numberOfTrailingZeros(rest);
+			boolean isKing = (b.kings & (1 << s)) != 0;
+			for (int d = 0; d < 4; d++){
+				if (!isKing && ((d < 2) != b.p1Turn))
+					continue;
+				int over = Board.NEIGHBOR[d][s];
+				if ((over < 0) || ((opp & (1 << over)) == 0))
+					continue;
+				int land = Board.JUMP[d][s];
+				if ((land >= 0) && ((empty & (1 << land)) != 0))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Counts the empty squares a side's pieces could step to.
+	 * @param b The board
+	 * @param pieces The side's pieces
+	 * @return The count, with squares reachable by two pieces counted twice
+	 */
+	private static int mobility(Board b, int pieces){
+		int empty = ~(b.p1 | b.p2);
+		int n = 0;
+		for (int rest = pieces; rest != 0; rest &= rest - 1){
+			int s = Integer.numberOfTrailingZeros(rest);
+			n += Integer.bitCount(STEPS[kind(b, s)][s] & empty);
+		}
+		return n;
+	}
+
+	private static int kind(Board b, int s){
+		int k = ((b.p1 >> s) & 1) != 0 ? Zobrist.P1_MAN : Zobrist.P2_MAN;
+		return k + ((b.kings >> s) & 1);
+	}
+}
@@ -0,0 +1,23 @@
+package Checkers;
+
+/**
+ * An evaluation function that scores positions in batches, for learned evaluators whose
+ * cost is dominated by per-call work that a batch shares (loading weights, dispatch).
+ * <p>
+ * Positions are passed as feature vectors written by {@link Features#encode(Board, float[], int)},
+ * {@link Features#SIZE} floats apiece, laid end to end in one buffer. A search collects
+ * leaves into such a buffer, evaluates them with one call, and then backs the results up.
+ * Implementations must allow calls from several threads at once.
+ * @author mhtong
+ *
+ */
+public interface Evaluator {
+	/**
+	 * Scores a batch of positions.
+	 * @param features count feature vectors, one after another from index 0
+	 * @param count The number of positions
+	 * @param out Receives the expected result of each position for its side to move, from
+	 * 0 (a loss) through 0.5 (a tie) to 1 (a win)
+	 */
+	void evaluate(float[] features, int count, float[] out);
+}
@@ -0,0 +1,59 @@
+package Checkers;
+
+import java.util.Arrays;
+
+/**
+ * The input encoding of learned evaluators: one plane of 32 squares per kind of piece,
+ * seen from the side to move.
+ * <p>
+ * The planes are the mover's men, the mover's kings, the opponent's men and the
+ * opponent's kings, each holding 1 on the squares with such a piece and 0 elsewhere.
+ * When P2 is to move the board is turned around (square s becomes 31 - s), so a position
+ * and its mirror image with the other side to move have the same features and a network
+ * only has to learn the game from one side.
+ * @author mhtong
+ *
+ */
+public final class Features {
+	/**Planes per position*/
+	public static final int PLANES = 4;
+
+	/**Floats per position*/
+	public static final int SIZE = PLANES * Board.SQUARES;
+
+	/**Offset of the side to move's men*/
+	public static final int OWN_MEN = 0;
+
+	/**Offset of the side to move's kings*/
+	public static final int OWN_KINGS = Board.SQUARES;
+
+	/**Offset of the opponent's men*/
+	public static final int OPP_MEN = 2 * Board.SQUARES;
+
+	/**Offset of the opponent's kings*/
+	public static final int OPP_KINGS = 3 * Board.SQUARES;
+
+	private Features(){
+	}
+
+	/**
+	 * Writes the features of a board.
+	 * @param b The board
+	 * @param buf The buffer, with room for SIZE floats from offset
+	 * @param offset Where the position's features start
+	 */
+	public static void encode(Board b, float[] buf, int offset){
+		Arrays.fill(buf, offset, offset + SIZE, 0f);
+		int own = b.p1Turn ? b.p1 : b.p2;
+		int opp = b.p1Turn ? b.p2 : b.p1;
+		int flip = b.p1Turn ? 0 : Board.SQUARES - 1;
+		for (int rest = own; rest != 0; rest &= rest - 1){
+			int s = Integer.numberOfTrailingZeros(rest);
+			buf[offset + (((b.kings & (1 << s)) != 0) ? OWN_KINGS : OWN_MEN) + (s ^ flip)] = 1f;
+		}
+		for (int rest = opp; rest != 0; rest &= rest - 1){
+			int s = Integer.numberOfTrailingZeros(rest);
+			buf[offset + (((b.kings & (1 << s)) != 0) ? OPP_KINGS : OPP_MEN) + (s ^ flip)] = 1f;
+		}
+	}
+}
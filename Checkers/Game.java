@@ -8,37 +8,17 @@ import java.util.Vector;
  * expanded and are set up when the game is constructed. Many methods are static and are
  * used to provide key information during search. Solver's will not have access to the actual
  * instance of the Game.
+ * <p>
+ * The state of each game lives in its own {@link GameSession}. The static methods act on
+ * the session bound to the calling thread, or on the most recently constructed Game's
+ * session if none is bound, so several games can run at once in one JVM.
  * @author mhtong
  *
  */
 public class Game{
-	/**The maximum number of expansions per move. No limit if 0.*/
-	private static int lookLimit;
-	
-	/**The maximum depth of expansion per move. No limit if 0.*/
-	private static int depthLimit;
-	
-	/**A counter of the number of expansions this move. Reset after each move.*/
-	private static int lookCounter;
-	
-	/**True if playing with a limit on # of expansions per move, false otherwise.*/
-	private static boolean counterPlay;
-	
-	/**True if playing with a limit on depth of search, false otherwise.*/
-	private static boolean depthPlay;
-	
-	/**Depth is the number of moves played so far.*/
-	private static int depth;
-	
-	/**The list of successor states reachable with valid moves. Indexes into this correspond with action numbers.*/
-	private static Vector<Board> moves;
-	
-	/**The current Board of the Game.*/
-	private static Board board;
-	
-	/**True if p1's turn, false if p2's turn.*/
-	private static boolean p1Turn;
-	
+	/**The state of this game*/
+	private final GameSession session;
+
 	/**
 	 * Default constructor for the Game class. It triggers a search mode that is bounded by the depth of the search.
 	 *
@@ -51,34 +31,29 @@ public class Game{
 
 	/**
 	 * The more specified constructor for the Game class. Search can be limited by depth and/or the total number of board states expanded. Providing a limit of 0 or less denotes no limit of that type.
+	 * The new game's session becomes the default session used by the static methods.
 	 * @param depthLim The max depth of search (0 for no limit)
 	 * @param lookLim The max number of board states that can be expanded (0 for no limit)
 	 */
 	public Game(int depthLim, int lookLim){
-		board = new Board();
-		BoardManipulator bman = new BoardManipulator(board);
-		moves = bman.expand();
-		depthLimit = depthLim;
-		lookLimit = lookLim;
-		if (lookLim > 0)
-			counterPlay = true;
-		else
-			counterPlay = false;
-		if (depthLim > 0)
-			depthPlay = true;
-		else
-			depthPlay = false;
-		lookCounter = 0;
-		depth = 0;
-		p1Turn = true;
+		session = new GameSession(depthLim, lookLim);
+		session.makeDefault();
 	}
 	
+	/**
+	 * Gets the session holding this game's state, for binding to the threads that play it.
+	 * @return This game's session
+	 */
+	public GameSession getSession(){
+		return session;
+	}
+
 	/**
 	 * This accesses the current board of the game in progress.
 	 * @return Current board of game
 	 */
 	public static Board getBoard(){
-		return new Board(board);
+		return GameSession.current().getBoard();
 	}
 
 	/**
@@ -86,7 +61,7 @@ public class Game{
 	 * @return A Vector of Board states representing the results of all possible moves.
 	 */
 	public Vector<Board> expand(){
-		return moves;
+		return session.getMoves();
 	}
 	
 	/**
@@ -94,7 +69,7 @@ public class Game{
 	 * @return Number of valid moves for the current player.
 	 */
 	public static int getNumMoves(){
-		return moves.size();
+		return GameSession.current().getNumMoves();
 	}
 
 	/**
@@ -103,22 +78,139 @@ public class Game{
 	 * @return A Vector of Board states representing the results of all possible moves, or null if a limit has been exceeded.
 	 */
 	public static Vector<Board> expand(Board b){
-		if (counterPlay && (lookCounter >= lookLimit))
-			return null;
-		if (depthPlay && (b.depth - depth >= depthLimit))
-			return null;
-		lookCounter++;
-		BoardManipulator bm = new BoardManipulator(b);
-		return bm.expand();
+		return GameSession.current().expand(b);
+	}
+
+
+	/**
+	 * This expands the supplied board without building successor Boards, writing its moves
+	 * into moves as encoded moves (see {@link Move}). The i-th move written corresponds to
+	 * the i-th Board returned by expand(Board), and a move can be played on b in place
+	 * with {@link Board#makeMove(long)}. Counts against the same limits as expand(Board).
+	 * @param b The board to be expanded.
+	 * @param moves The buffer to fill, with room for at least {@link Move#MAX_MOVES} moves
+	 * @return The number of moves written, or -1 if a limit has been exceeded.
+	 */
+	public static int expand(Board b, long[] moves){
+		return GameSession.current().expand(b, moves);
+	}
+
+	/**
+	 * This expands the supplied board into Boards reused from the calling thread's pool
+	 * (see {@link #getPool()}), writing them into out in the same order as expand(Board).
+	 * No Boards are allocated once the pool has grown to the size the search needs. The
+	 * Boards stay valid until they are released to the pool, and at the latest until the
+	 * next move is played. Counts against the same limits as expand(Board).
+	 * @param b The board to be expanded.
+	 * @param out The array to fill, with room for at least {@link Move#MAX_MOVES} Boards
+	 * @return The number of successors written, or -1 if a limit has been exceeded.
+	 */
+	public static int expand(Board b, Board[] out){
+		return GameSession.current().expand(b, out);
+	}
+
+	/**
+	 * This returns the calling thread's pool of successor Boards for expand(Board, Board[]).
+	 * A depth-first search takes pool.mark() before expanding a node and calls
+	 * pool.release(mark) once the node's children are done with, so the same few Boards
+	 * are reused throughout the search. Boards from an earlier move are released
+	 * automatically.
+	 * @return The pool
+	 */
+	public static BoardPool getPool(){
+		return GameSession.current().getPool();
+	}
+
+	/**
+	 * This expands the supplied board one successor at a time. The successors come in the
+	 * same order as those of expand(Board), and getIndex() on the iterator gives the action
+	 * index of the one last returned. Moves are generated piece by piece as the iteration
+	 * reaches them and a Board is built only when next() is called, so a search that stops
+	 * early, e.g. on a cutoff, does not pay for the children it never visits. Counts as one
+	 * expansion against the same limits as expand(Board), charged when this is called.
+	 * @param b The board to be expanded.
+	 * @return An iterator over the successors, or null if a limit has been exceeded.
+	 */
+	public static Successors successors(Board b){
+		return GameSession.current().successors(b);
 	}
 
+	/**
+	 * This expands only the jumps of the supplied board, writing them into moves as encoded
+	 * moves in the same order as expand(Board, long[]). Jumps are mandatory, so a board
+	 * with any jump has no other moves. It ignores the depth limit and is not charged to
+	 * the look budget, so quiescence search can settle capture exchanges beyond the
+	 * horizon; these expansions are counted separately by getCaptureLooks().
+	 * @param b The board to be expanded.
+	 * @param moves The buffer to fill, with room for at least {@link Move#MAX_MOVES} moves
+	 * @return The number of jumps written, 0 if b has none.
+	 */
+	public static int expandCaptures(Board b, long[] moves){
+		return GameSession.current().expandCaptures(b, moves);
+	}
+
+	/**
+	 * This returns the number of capture-only expansions made this move. They do not count
+	 * against the look limit.
+	 * @return The number of expandCaptures calls since the last move
+	 */
+	public static long getCaptureLooks(){
+		return GameSession.current().getCaptureLooks();
+	}
 
 	/**
 	 * This prints the current board.
 	 *
 	 */
 	public static void printGame(){
-		board.printBoard();
+		GameSession.current().printGame();
+	}
+
+	/**
+	 * Attaches counters of the search work done for each move: expansions, refused
+	 * expansions, boards allocated, and what the Solvers report. Each move's counts are
+	 * closed when it is played. Counting is off until this is called.
+	 * @param s The counters, null to stop counting
+	 */
+	public void setStats(SearchStats s){
+		session.setStats(s);
+	}
+
+	/**
+	 * Gets the counters attached to the game, for a Solver to add its own counts to.
+	 * @return The counters, null if the game is not being measured
+	 */
+	public static SearchStats getStats(){
+		return GameSession.current().getStats();
+	}
+
+	/**
+	 * Tells whether the game has been drawn by rule: the current position has occurred
+	 * three times, or 40 moves by each side have passed without a capture or a man being
+	 * moved. A drawn game has no moves left, so getNumMoves() returns 0.
+	 * @return true if the game ended in a draw by rule
+	 */
+	public static boolean isDraw(){
+		return GameSession.current().isDraw();
+	}
+
+	/**
+	 * Gets the positions of the game so far, so that a Solver can recognise repetitions.
+	 * Push each position searched onto the copy and pop it on the way back; a position that
+	 * is already in the history can be scored as a draw.
+	 * @return A copy of the game's history, the current position last
+	 */
+	public static PositionHistory getHistory(){
+		return GameSession.current().getHistory();
+	}
+
+	/**
+	 * Gets the moves played so far as a GameRecord, which can be saved as PDN or in binary
+	 * form and replayed.
+	 * @return The record of the game, its result GameRecord.UNFINISHED while moves remain
+	 */
+	public static GameRecord getRecord(){
+		return GameSession.current().getRecord();
 	}
 
 	/**
@@ -126,16 +218,7 @@ public class Game{
 	 * @param a An index into the Vector of Boards returned by expand(), signifying the action to be taken.
 	 */
 	public void doMove(int a){
-		if (moves == null)
-			throw new RuntimeException("Must expand current board before moving");
-		if ((a<0) || (a>= moves.size()))
-			throw new RuntimeException("Attempt to execute a non-existing action.");
-		board = moves.elementAt(a);
-		lookCounter = 0;
-		depth++;
-		p1Turn = board.p1Turn;
-		BoardManipulator bm = new BoardManipulator(board);
-		moves = bm.expand();
+		session.doMove(a);
 	}
 
 	/**
@@ -143,17 +226,24 @@ public class Game{
 	 * @return The number of expansions left, -1 if no limit.
 	 */
 	public static int getLooksLeft(){
-		if (lookLimit == 0)
-			return -1;
-		return lookLimit - lookCounter;
+		return GameSession.current().getLooksLeft();
 	}
 	
+	/**
+	 * This returns the maximum depth of expansion per move. Boards that many moves past the
+	 * current board of the game will not be expanded.
+	 * @return The depth limit, 0 if there is no limit.
+	 */
+	public static int getDepthLimit(){
+		return GameSession.current().getDepthLimit();
+	}
+
 	/**
 	 * Checks whether any of p2's pieces remain, signifying a win by p1
 	 * @return true if p2 has no pieces, false else
 	 */
 	public boolean p1Win(){
-		return board.p1win();
+		return session.p1Win();
 	}
 	
 	/**
@@ -161,7 +251,7 @@ public class Game{
 	 * @return true if p1 has no pieces, false else
 	 */
 	public boolean p2Win(){
-		return board.p2win();
+		return session.p2Win();
 	}
 	
 	/**
@@ -174,29 +264,14 @@ public class Game{
 	 * about when a piece is taken in the case of multiple jumps is also 
 	 * provided - namely, the jumpCount in the Coord is the count on the number of
 	 * jumps prior to this being taken (0 for singleton jumps or the first jump in
-	 * a multi-jump, 1 for the second jump in a multijump, etc).
+	 * a multi-jump, 1 for the second jump in a multijump, etc). The threats are those
+	 * of the side to move on b. Each jump sequence's pieces are listed together, in
+	 * jump order, and sequences come in the order of expand's jump moves. Use
+	 * {@link Threats} to get the same information as bit masks without allocating.
 	 * @param b The board to be analyzed
-	 * @return A Vector of Coords of pieces that could be taken next turn
+	 * @return A Vector of Coords of pieces that could be taken next turn, null if there is no jump
 	 */
 	public static Vector <Coord> getThreats(Board b){
-		BoardManipulator bm = new BoardManipulator(b);
-		Vector <Board> s = bm.expand();
-		Vector <Coord> set = new Vector<Coord>();
-		int jumpCount;
-		for (Board c:s){
-			jumpCount = 0;
-			for (int i = 0; i < Board.BOARDSIZE; i++){
-				for (int j = 0; j < Board.BOARDSIZE; j++){
-					if ((p1Turn &&(b.board[i][j] < 0) && (c.board[i][j] == 0))||
-							(!p1Turn && (b.board[i][j] > 0) && (c.board[i][j] == 0))){
-						set.add(new Coord(i,j, jumpCount));
-						jumpCount++;
-					}
-				}
-			}
-		}
-		if (bm.isJump)
-			return set;
-		return null;
+		return GameSession.current().getThreats(b);
 	}
 }
\ No newline at end of file
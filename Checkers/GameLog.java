@@ -0,0 +1,191 @@
+package Checkers;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * An append-only log of GameRecords, for many games finishing at once on different
+ * threads.
+ * <p>
+ * The log is a directory of fixed size segment files (games-00000.log, games-00001.log,
+ * ...), each memory mapped while it is written. A writer claims space for its record by
+ * adding the record's length to the segment's atomic write position, then copies the
+ * record into the space it claimed, so concurrent appends never wait on each other. Only
+ * the thread that finds the current segment full takes a lock, to open the next one.
+ * <p>
+ * A record is a 4-byte length followed by the bytes of GameRecord.toBytes, padded to a
+ * multiple of 4. The length is written last, so a reader stops at a record still being
+ * copied as it would at the end of a segment, where the unused space reads as zeros.
+ * @author mhtong
+ *
+ */
+public class GameLog implements Closeable {
+	/**Default segment size: 64MB, roughly a million games*/
+	public static final int DEFAULT_SEGMENT = 1 << 26;
+
+	/**The directory of segments*/
+	private final File dir;
+
+	/**The size of each segment in bytes*/
+	private final int segmentSize;
+
+	/**The segment being written*/
+	private volatile Segment current;
+
+	/**Every segment opened, to be closed*/
+	private final List<Segment> segments = new ArrayList<Segment>();
+
+	/**Records appended*/
+	private final AtomicInteger records = new AtomicInteger();
+
+	/**A mapped segment file*/
+	private static class Segment {
+		final int index;
+
+		final RandomAccessFile file;
+
+		final MappedByteBuffer buffer;
+
+		/**The next free byte*/
+		final AtomicInteger position = new AtomicInteger();
+
+		Segment(File f, int index, int size) throws IOException{
+			this.index = index;
+			file = new RandomAccessFile(f, "rw");
+			file.setLength(size);
+			buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+
+	/**
+	 * Opens a log for appending, after any segments already in the directory.
+	 * @param dir The directory, created if missing
+	 * @param segmentSize The size of each segment file in bytes
+	 * @throws IOException If the directory or a segment cannot be created
+	 */
+	public GameLog(File dir, int segmentSize) throws IOException{
+		this.dir = dir;
+		this.segmentSize = segmentSize;
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new FileNotFoundException("Cannot create " + dir);
+		int next = 0;
+		while (segment(dir, next).exists())
+			next++;
+		current = open(next);
+	}
+
+	/**
+	 * Appends a record. Safe to call from any number of threads at once.
+	 * @param r The record
+	 * @throws IOException If a new segment is needed and cannot be created
+	 */
+	public void append(GameRecord r) throws IOException{
+		byte[] body = r.toBytes();
+		int length = (4 + body.length + 3) & ~3;
+		if (length > segmentSize)
+			throw new IllegalArgumentException("Record of " + body.length + " bytes does not fit a segment");
+		while (true){
+			Segment s = current;
+			int at = s.position.getAndAdd(length);
+			if (at + length <= segmentSize){
+				for (int k = 0; k < body.length; k++)
+					s.buffer.put(at + 4 + k, body[k]);
+				s.buffer.putInt(at, body.length);
+				records.incrementAndGet();
+				return;
+			}
+			roll(s);
+		}
+	}
+
+	/**
+	 * @return The number of records appended since the log was opened
+	 */
+	public int getRecords(){
+		return records.get();
+	}
+
+	/**
+	 * Moves on to a new segment, unless another thread already has.
+	 * @param full The segment found full
+	 * @throws IOException If the segment cannot be created
+	 */
+	private synchronized void roll(Segment full) throws IOException{
+		if (current == full)
+			current = open(full.index + 1);
+	}
+
+	/**
+	 * Creates and maps a segment.
+	 * @param index The segment number
+	 * @return The segment
+	 * @throws IOException If it cannot be created
+	 */
+	private synchronized Segment open(int index) throws IOException{
+		Segment s = new Segment(segment(dir, index), index, segmentSize);
+		segments.add(s);
+		return s;
+	}
+
+	/**
+	 * Flushes every segment to disk and closes the log. No appends may be in progress.
+	 * @throws IOException If a segment cannot be written
+	 */
+	public synchronized void close() throws IOException{
+		for (Segment s:segments){
+			s.buffer.force();
+			s.file.close();
+		}
+		segments.clear();
+	}
+
+	/**
+	 * Reads every record of a log, segment by segment.
+	 * @param dir The log directory
+	 * @param reader Receives each record in the order it was written within its segment
+	 * @return The number of records read
+	 * @throws IOException If a segment cannot be read
+	 */
+	public static int read(File dir, Consumer<GameRecord> reader) throws IOException{
+		int count = 0;
+		for (int index = 0; segment(dir, index).exists(); index++){
+			try (RandomAccessFile f = new RandomAccessFile(segment(dir, index), "r")){
+				MappedByteBuffer buf = f.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, f.length());
+				buf.order(ByteOrder.LITTLE_ENDIAN);
+				byte[] body = new byte[0];
+				int at = 0;
+				while (at + 4 <= buf.capacity()){
+					int len = buf.getInt(at);
+					if ((len <= 0) || (at + 4 + len > buf.capacity()))
+						break;
+					if (body.length < len)
+						body = new byte[len];
+					buf.position(at + 4);
+					buf.get(body, 0, len);
+					reader.accept(GameRecord.fromBytes(body, 0, len));
+					count++;
+					at = (at + 4 + len + 3) & ~3;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return The file of segment index in a log directory
+	 */
+	private static File segment(File dir, int index){
+		return new File(dir, String.format("games-%05d.log", index));
+	}
+}
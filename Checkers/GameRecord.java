@@ -0,0 +1,324 @@
+package Checkers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The moves of one game from the start position, with its result.
+ * <p>
+ * A move is stored as its action index: its position in the move list Game.expand returns
+ * for the board it was played on. The generator's order is fixed, so the index alone
+ * identifies the move, fits in a byte, and replaying a record is one move generation and
+ * one makeMove per ply. {@link #toBytes()} gives that binary form, one byte for the result
+ * and one per move.
+ * <p>
+ * Records can also be written and read as PDN (Portable Draughts Notation) text. Squares
+ * are numbered 1 to 32 row by row from P1's back rank, so P1 starts on 1-12 like Black in
+ * standard PDN, and P1, who moves first, is the first side in the result ("1-0" is a P1
+ * win). A simple move is written "from-to" and a capture "fromxto", with the landing
+ * squares in between ("fromxviaxto") only when two captures share both ends.
+ * @author mhtong
+ *
+ */
+public class GameRecord {
+	/**The result of a game that has not ended*/
+	public static final int UNFINISHED = 2;
+
+	/**The action index of each ply*/
+	private final int[] actions;
+
+	/**1 if P1 won, -1 if P2 won, 0 for a tie, UNFINISHED if the game goes on*/
+	private final int result;
+
+	/**
+	 * Creates a record.
+	 * @param actions The action index chosen at each ply, from the start position
+	 * @param result 1 if P1 won, -1 if P2 won, 0 for a tie, UNFINISHED if the game goes on
+	 */
+	public GameRecord(int[] actions, int result){
+		this.actions = actions.clone();
+		this.result = result;
+	}
+
+	/**
+	 * @return The action index of each ply
+	 */
+	public int[] getActions(){
+		return actions.clone();
+	}
+
+	/**
+	 * @return 1 if P1 won, -1 if P2 won, 0 for a tie, UNFINISHED if the game goes on
+	 */
+	public int getResult(){
+		return result;
+	}
+
+	/**
+	 * @return The number of moves played
+	 */
+	public int getPlies(){
+		return actions.length;
+	}
+
+	/**
+	 * Replays the whole game.
+	 * @return The final board
+	 */
+	public Board replay(){
+		return replay(actions.length);
+	}
+
+	/**
+	 * Replays the start of the game. No GameSession is involved, so this costs no looks.
+	 * @param plies The number of moves to play
+	 * @return The board after them
+	 * @throws IllegalArgumentException If a recorded action does not exist
+	 */
+	public Board replay(int plies){
+		Board b = new Board();
+		long[] moves = new long[Move.MAX_MOVES];
+		for (int ply = 0; ply < plies; ply++){
+			int n = BoardManipulator.generate(b, moves, 0);
+			if ((actions[ply] < 0) || (actions[ply] >= n))
+				throw new IllegalArgumentException("Action " + actions[ply] + " at ply " + ply + " does not exist");
+			b.makeMove(moves[actions[ply]]);
+		}
+		return new Board(b);
+	}
+
+	/**
+	 * Encodes the record: the result as a signed byte, then one byte per action index.
+	 * @return The encoded record
+	 */
+	public byte[] toBytes(){
+		byte[] out = new byte[1 + actions.length];
+		out[0] = (byte)result;
+		for (int ply = 0; ply < actions.length; ply++)
+			out[1 + ply] = (byte)actions[ply];
+		return out;
+	}
+
+	/**
+	 * Decodes a record written by toBytes.
+	 * @param buf The buffer
+	 * @param off Where the record starts
+	 * @param len Its length in bytes
+	 * @return The record
+	 */
+	public static GameRecord fromBytes(byte[] buf, int off, int len){
+		int[] actions = new int[len - 1];
+		for (int ply = 0; ply < actions.length; ply++)
+			actions[ply] = buf[off + 1 + ply] & 0xFF;
+		return new GameRecord(actions, buf[off]);
+	}
+
+	/**
+	 * Writes the record as PDN.
+	 * @param event The Event tag, or null to leave it out
+	 * @return The game text, with tag pairs and the move text
+	 */
+	public String toPDN(String event){
+		StringBuilder sb = new StringBuilder();
+		if (event != null)
+			sb.append("[Event \"").append(event).append("\"]\n");
+		sb.append("[Result \"").append(resultText(result)).append("\"]\n");
+		Board b = new Board();
+		long[] moves = new long[Move.MAX_MOVES];
+		int line = 0;
+		for (int ply = 0; ply < actions.length; ply++){
+			int n = BoardManipulator.generate(b, moves, 0);
+			long m = moves[actions[ply]];
+			String token = moveText(b, m, moves, n);
+			if ((ply & 1) == 0)
+				token = (ply / 2 + 1) + ". " + token;
+			if (line + token.length() + 1 > 80){
+				sb.append('\n');
+				line = 0;
+			}
+			else if (line > 0){
+				sb.append(' ');
+				line++;
+			}
+			sb.append(token);
+			line += token.length();
+			b.makeMove(m);
+		}
+		sb.append((line > 0) ? " " : "").append(resultText(result)).append('\n');
+		return sb.toString();
+	}
+
+	/**
+	 * Reads a game written in PDN. Tag pairs, comments and move numbers are skipped.
+	 * @param text The game text
+	 * @return The record
+	 * @throws IllegalArgumentException If a move is not legal where it is played
+	 */
+	public static GameRecord fromPDN(String text){
+		String body = text.replaceAll("\\[[^\\]]*\\]", " ").replaceAll("\\{[^}]*\\}", " ");
+		Board b = new Board();
+		long[] moves = new long[Move.MAX_MOVES];
+		int[] actions = new int[16];
+		int plies = 0;
+		int result = UNFINISHED;
+		for (String token:body.trim().split("\\s+")){
+			if (token.isEmpty() || token.matches("\\d+\\.+"))
+				continue;
+			int r = parseResult(token);
+			if (r != Integer.MIN_VALUE){
+				result = r;
+				break;
+			}
+			String[] parts = token.replaceFirst("^\\d+\\.+", "").split("[-x]");
+			int[] squares = new int[parts.length];
+			for (int k = 0; k < parts.length; k++)
+				squares[k] = fromPDNSquare(Integer.parseInt(parts[k]));
+			int n = BoardManipulator.generate(b, moves, 0);
+			int a = find(b, moves, n, squares);
+			if (a < 0)
+				throw new IllegalArgumentException("Illegal move " + token + " at ply " + plies);
+			if (plies == actions.length)
+				actions = Arrays.copyOf(actions, 2 * plies);
+			actions[plies++] = a;
+			b.makeMove(moves[a]);
+		}
+		return new GameRecord(Arrays.copyOf(actions, plies), result);
+	}
+
+	/**
+	 * @param s A square index
+	 * @return Its PDN number, 1 to 32
+	 */
+	public static int toPDNSquare(int s){
+		return Board.squareCol(s) * 4 + Board.squareRow(s) / 2 + 1;
+	}
+
+	/**
+	 * @param n A PDN square number, 1 to 32
+	 * @return The square index
+	 */
+	public static int fromPDNSquare(int n){
+		if ((n < 1) || (n > Board.SQUARES))
+			throw new IllegalArgumentException("No square " + n);
+		int j = (n - 1) / 4, i = 2 * ((n - 1) % 4);
+		int s = Board.square(i, j);
+		return (s >= 0) ? s : Board.square(i + 1, j);
+	}
+
+	/**
+	 * Finds the move a PDN token names.
+	 * @param squares The token's squares, as square indices
+	 * @return The action index, -1 if there is none
+	 */
+	private static int find(Board b, long[] moves, int n, int[] squares){
+		int from = squares[0], to = squares[squares.length - 1];
+		for (int a = 0; a < n; a++){
+			long m = moves[a];
+			if ((Move.from(m) != from) || (Move.to(m) != to))
+				continue;
+			if ((squares.length == 2) || Arrays.equals(squares, path(b, m)))
+				return a;
+		}
+		return -1;
+	}
+
+	/**
+	 * Writes one move in PDN.
+	 * @param b The board it is played on
+	 * @param m The move
+	 * @param moves Every move of b, to tell whether the short form is ambiguous
+	 * @param n The number of moves
+	 * @return The move text
+	 */
+	private static String moveText(Board b, long m, long[] moves, int n){
+		if (Move.captured(m) == 0)
+			return toPDNSquare(Move.from(m)) + "-" + toPDNSquare(Move.to(m));
+		boolean ambiguous = false;
+		for (int a = 0; a < n; a++)
+			if ((moves[a] != m) && (Move.from(moves[a]) == Move.from(m)) && (Move.to(moves[a]) == Move.to(m)))
+				ambiguous = true;
+		int[] squares = ambiguous ? path(b, m) : new int[]{Move.from(m), Move.to(m)};
+		StringBuilder sb = new StringBuilder();
+		for (int k = 0; k < squares.length; k++)
+			sb.append((k > 0) ? "x" : "").append(toPDNSquare(squares[k]));
+		return sb.toString();
+	}
+
+	/**
+	 * Traces the squares a capture lands on. A move records only its ends and the pieces
+	 * it takes, so the path is found by jumping the captured pieces one at a time.
+	 * @param b The board the move is played on
+	 * @param m A capture
+	 * @return The squares from the start to the end of the move
+	 */
+	private static int[] path(Board b, long m){
+		int captured = Move.captured(m);
+		List<Integer> squares = new ArrayList<Integer>();
+		squares.add(Move.from(m));
+		int empty = ~(b.p1 | b.p2) | (1 << Move.from(m));
+		trace(Move.from(m), Move.to(m), captured, empty, squares);
+		int[] out = new int[squares.size()];
+		for (int k = 0; k < out.length; k++)
+			out[k] = squares.get(k);
+		return out;
+	}
+
+	/**
+	 * Extends a capture path until every captured piece is taken and the move's last
+	 * square is reached.
+	 * @return true if the path was completed
+	 */
+	private static boolean trace(int s, int to, int left, int empty, List<Integer> squares){
+		if (left == 0)
+			return s == to;
+		for (int d = 0; d < 4; d++){
+			int over = Board.NEIGHBOR[d][s];
+			int land = Board.JUMP[d][s];
+			if ((land < 0) || ((left & (1 << over)) == 0) || ((empty & (1 << land)) == 0))
+				continue;
+			squares.add(land);
+			if (trace(land, to, left & ~(1 << over), empty | (1 << over), squares))
+				return true;
+			squares.remove(squares.size() - 1);
+		}
+		return false;
+	}
+
+	/**
+	 * @return The PDN result text of a result
+	 */
+	private static String resultText(int result){
+		switch(result){
+		case 1:
+			return "1-0";
+		case -1:
+			return "0-1";
+		case 0:
+			return "1/2-1/2";
+		default:
+			return "*";
+		}
+	}
+
+	/**
+	 * @return The result a PDN token stands for, Integer.MIN_VALUE if it is not a result
+	 */
+	private static int parseResult(String token){
+		switch(token){
+		case "1-0":
+		case "2-0":
+			return 1;
+		case "0-1":
+		case "0-2":
+			return -1;
+		case "1/2-1/2":
+		case "1-1":
+			return 0;
+		case "*":
+			return UNFINISHED;
+		default:
+			return Integer.MIN_VALUE;
+		}
+	}
+}
@@ -0,0 +1,445 @@
+package Checkers;
+
+import java.util.Arrays;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The state of one game in progress: its board, the moves available on it, and the
+ * expansion budget for the current move. Game's static methods work on the session bound
+ * to the calling thread (see {@link #bind()}), or on the most recently created Game's
+ * session if none is bound, so any number of sessions can run side by side in one JVM.
+ * <p>
+ * The look counter is atomic, so several search threads working for the same session
+ * share one budget. Everything else changes only in doMove, which must not run while a
+ * Solver is searching.
+ * @author mhtong
+ *
+ */
+public class GameSession {
+	/**The session used by threads that have not bound one*/
+	private static volatile GameSession defaultSession;
+
+	/**The session bound to each thread, if any*/
+	private static final ThreadLocal<GameSession> bound = new ThreadLocal<GameSession>();
+
+	/**The maximum number of expansions per move. No limit if 0.*/
+	private final int lookLimit;
+
+	/**The maximum depth of expansion per move. No limit if 0.*/
+	private final int depthLimit;
+
+	/**True if playing with a limit on # of expansions per move, false otherwise.*/
+	private final boolean counterPlay;
+
+	/**True if playing with a limit on depth of search, false otherwise.*/
+	private final boolean depthPlay;
+
+	/**A counter of the number of expansions this move. Reset after each move.*/
+	private final AtomicInteger lookCounter = new AtomicInteger();
+
+	/**A counter of the capture-only expansions this move, kept apart from the look budget. Reset after each move.*/
+	private final LongAdder captureCounter = new LongAdder();
+
+	/**Depth is the number of moves played so far.*/
+	private int depth;
+
+	/**The list of successor states reachable with valid moves. Indexes into this correspond with action numbers.*/
+	private Vector<Board> moves;
+
+	/**The current Board of the Game.*/
+	private Board board;
+
+	/**The action played at each ply so far*/
+	private int[] history = new int[64];
+
+	/**Counts the search work of each move, null when not wanted*/
+	private volatile SearchStats stats;
+
+	/**Every position of the game so far, for draw detection*/
+	private final PositionHistory positions = new PositionHistory();
+
+	/**Each searching thread's pool of successor Boards*/
+	private final ThreadLocal<BoardPool> pools = ThreadLocal.withInitial(BoardPool::new);
+
+	/**
+	 * Creates a session at the start of a game. Search can be limited by depth and/or the total number of board states expanded. Providing a limit of 0 or less denotes no limit of that type.
+	 * @param depthLim The max depth of search (0 for no limit)
+	 * @param lookLim The max number of board states that can be expanded (0 for no limit)
+	 */
+	public GameSession(int depthLim, int lookLim){
+		board = new Board();
+		BoardManipulator bman = new BoardManipulator(board);
+		moves = bman.expand();
+		positions.push(board.getHash(), true);
+		depthLimit = depthLim;
+		lookLimit = lookLim;
+		counterPlay = lookLim > 0;
+		depthPlay = depthLim > 0;
+		depth = 0;
+	}
+
+	/**
+	 * Gets the session that Game's static methods use on the calling thread.
+	 * @return The bound session, else the default one
+	 */
+	public static GameSession current(){
+		GameSession s = bound.get();
+		if (s == null)
+			s = defaultSession;
+		if (s == null)
+			throw new IllegalStateException("No game in progress");
+		return s;
+	}
+
+	/**
+	 * Makes this the session used when no session is bound. Game's constructor does this.
+	 */
+	public void makeDefault(){
+		defaultSession = this;
+	}
+
+	/**
+	 * Binds this session to the calling thread, so that Game's static methods called from
+	 * it refer to this session. Helper threads searching for this game should bind it too.
+	 */
+	public void bind(){
+		bound.set(this);
+	}
+
+	/**
+	 * Removes any session binding from the calling thread.
+	 */
+	public static void unbind(){
+		bound.remove();
+	}
+
+	/**
+	 * This accesses the current board of the game in progress.
+	 * @return A copy of the current board of the game
+	 */
+	public Board getBoard(){
+		return new Board(board);
+	}
+
+	/**
+	 * This returns the successor states of the current board via all possible moves. Moves are indexed using this Vector.
+	 * @return A Vector of Board states representing the results of all possible moves.
+	 */
+	public Vector<Board> getMoves(){
+		for (Board m:moves)
+			m.toArray();
+		return moves;
+	}
+
+	/**
+	 * This returns the number of currently valid moves.
+	 * @return Number of valid moves for the current player.
+	 */
+	public int getNumMoves(){
+		return moves.size();
+	}
+
+	/**
+	 * Expands the supplied board against this session's limits. See {@link Game#expand(Board)}.
+	 * @param b The board to be expanded.
+	 * @return A Vector of Board states representing the results of all possible moves, or null if a limit has been exceeded.
+	 */
+	public Vector<Board> expand(Board b){
+		if (!charge(b))
+			return null;
+		BoardManipulator bm = new BoardManipulator(b);
+		Vector<Board> s = bm.expand();
+		SearchStats st = stats;
+		if (st != null)
+			st.expanded(s.size(), s.size());
+		for (Board m:s)
+			m.toArray();
+		return s;
+	}
+
+	/**
+	 * Expands the supplied board into encoded moves against this session's limits. See {@link Game#expand(Board, long[])}.
+	 * @param b The board to be expanded.
+	 * @param moves The buffer to fill, with room for at least {@link Move#MAX_MOVES} moves
+	 * @return The number of moves written, or -1 if a limit has been exceeded.
+	 */
+	public int expand(Board b, long[] moves){
+		if (!charge(b))
+			return -1;
+		int n = BoardManipulator.generate(b, moves, 0);
+		SearchStats st = stats;
+		if (st != null)
+			st.expanded(n, 0);
+		return n;
+	}
+
+	/**
+	 * Expands the supplied board into encoded moves against this session's limits, like
+	 * {@link #expand(Board, long[])}, but leaves the expansion out of the attached
+	 * SearchStats. For searchers that count their expansions in their own fields and add
+	 * them to the stats once per search. Refused expansions are still counted.
+	 * @param b The board to be expanded.
+	 * @param moves The buffer to fill, with room for at least {@link Move#MAX_MOVES} moves
+	 * @return The number of moves written, or -1 if a limit has been exceeded.
+	 */
+	public int expandUncounted(Board b, long[] moves){
+		if (!charge(b))
+			return -1;
+		return BoardManipulator.generate(b, moves, 0);
+	}
+
+	/**
+	 * Expands the supplied board into pooled Boards against this session's limits. See {@link Game#expand(Board, Board[])}.
+	 * @param b The board to be expanded.
+	 * @param out The array to fill, with room for at least {@link Move#MAX_MOVES} Boards
+	 * @return The number of successors written, or -1 if a limit has been exceeded.
+	 */
+	public int expand(Board b, Board[] out){
+		if (!charge(b))
+			return -1;
+		int n = BoardManipulator.expand(b, getPool(), out);
+		SearchStats st = stats;
+		if (st != null)
+			st.expanded(n, 0);
+		return n;
+	}
+
+	/**
+	 * Gets the calling thread's pool of successor Boards. See {@link Game#getPool()}.
+	 * @return The pool, with the Boards of any earlier move released
+	 */
+	public BoardPool getPool(){
+		BoardPool p = pools.get();
+		p.sync(depth);
+		return p;
+	}
+
+	/**
+	 * Expands the supplied board lazily against this session's limits. See {@link Game#successors(Board)}.
+	 * @param b The board to be expanded.
+	 * @return The successors, or null if a limit has been exceeded.
+	 */
+	public Successors successors(Board b){
+		if (!charge(b))
+			return null;
+		SearchStats st = stats;
+		if (st != null)
+			st.expanded(0, 0);
+		return new Successors(b, st, pools.get().moves);
+	}
+
+	/**
+	 * Expands only the jumps of the supplied board, for quiescence search. See {@link Game#expandCaptures(Board, long[])}.
+	 * @param b The board to be expanded.
+	 * @param moves The buffer to fill, with room for at least {@link Move#MAX_MOVES} moves
+	 * @return The number of jumps written, 0 if b has none.
+	 */
+	public int expandCaptures(Board b, long[] moves){
+		SearchStats st = stats;
+		if (st != null)
+			st.increment(SearchStats.CAPTURE_EXPANDS);
+		return expandCapturesUncounted(b, moves);
+	}
+
+	/**
+	 * Expands only the jumps of the supplied board, like {@link #expandCaptures(Board, long[])},
+	 * but leaves the expansion out of the attached SearchStats. See {@link #expandUncounted(Board, long[])}.
+	 * @param b The board to be expanded.
+	 * @param moves The buffer to fill, with room for at least {@link Move#MAX_MOVES} moves
+	 * @return The number of jumps written, 0 if b has none.
+	 */
+	public int expandCapturesUncounted(Board b, long[] moves){
+		BoardPool.check(b);
+		captureCounter.increment();
+		int n = BoardManipulator.generate(b, moves, 0);
+		return ((n > 0) && Move.isCapture(moves[0])) ? n : 0;
+	}
+
+	/**
+	 * This returns the number of capture-only expansions made this move.
+	 * @return The count, over all threads
+	 */
+	public long getCaptureLooks(){
+		return captureCounter.sum();
+	}
+
+	/**
+	 * Checks the expansion limits for b and, if they allow it, counts one expansion.
+	 * Safe to call from several threads at once.
+	 * @param b The board about to be expanded
+	 * @return true if the expansion may go ahead, false if a limit has been exceeded
+	 */
+	private boolean charge(Board b){
+		BoardPool.check(b);
+		SearchStats st = stats;
+		if (depthPlay && (b.depth - depth >= depthLimit)){
+			if (st != null)
+				st.increment(SearchStats.REFUSED);
+			return false;
+		}
+		if (counterPlay){
+			int c;
+			do{
+				c = lookCounter.get();
+				if (c >= lookLimit){
+					if (st != null)
+						st.increment(SearchStats.REFUSED);
+					return false;
+				}
+			} while (!lookCounter.compareAndSet(c, c + 1));
+		}
+		return true;
+	}
+
+	/**
+	 * This exectutes the move denoted by a and resets the expansion budget.
+	 * @param a An index into the Vector of Boards returned by getMoves(), signifying the action to be taken.
+	 */
+	public void doMove(int a){
+		if (moves == null)
+			throw new RuntimeException("Must expand current board before moving");
+		if ((a<0) || (a>= moves.size()))
+			throw new RuntimeException("Attempt to execute a non-existing action.");
+		Board before = board;
+		board = moves.elementAt(a);
+		if (depth == history.length)
+			history = Arrays.copyOf(history, 2 * depth);
+		history[depth] = a;
+		SearchStats st = stats;
+		if (st != null)
+			st.endMove();
+		lookCounter.set(0);
+		captureCounter.reset();
+		depth++;
+		BoardManipulator bm = new BoardManipulator(board);
+		moves = bm.expand();
+		int menBefore = (before.p1 | before.p2) & ~before.kings;
+		int menAfter = (board.p1 | board.p2) & ~board.kings;
+		boolean irreversible = (menBefore != menAfter) ||
+				(Integer.bitCount(before.p1 | before.p2) != Integer.bitCount(board.p1 | board.p2));
+		positions.push(board.getHash(), irreversible);
+		if (positions.isDraw())
+			moves = new Vector<Board>();
+	}
+
+	/**
+	 * Attaches counters of the search work done for each move. See {@link Game#setStats(SearchStats)}.
+	 * @param s The counters, null to stop counting
+	 */
+	public void setStats(SearchStats s){
+		stats = s;
+	}
+
+	/**
+	 * @return The attached counters, null if none
+	 */
+	public SearchStats getStats(){
+		return stats;
+	}
+
+	/**
+	 * Tells whether the game has been drawn by repetition or the move rule. See {@link Game#isDraw()}.
+	 * @return true if the game ended in a draw by rule
+	 */
+	public boolean isDraw(){
+		return positions.isDraw();
+	}
+
+	/**
+	 * Gets the positions of the game so far. See {@link Game#getHistory()}.
+	 * @return A copy of the history, the current position last
+	 */
+	public PositionHistory getHistory(){
+		return new PositionHistory(positions);
+	}
+
+	/**
+	 * Copies the positions of the game so far into a searcher's own history.
+	 * @param h The history to overwrite
+	 */
+	public void copyHistory(PositionHistory h){
+		h.copyFrom(positions);
+	}
+
+	/**
+	 * Gets the record of the game so far. See {@link Game#getRecord()}.
+	 * @return The moves played and the result, GameRecord.UNFINISHED while moves remain
+	 */
+	public GameRecord getRecord(){
+		int result = (moves.size() > 0) ? GameRecord.UNFINISHED : p1Win() ? 1 : p2Win() ? -1 : 0;
+		return new GameRecord(Arrays.copyOf(history, depth), result);
+	}
+
+	/**
+	 * This returns the number of looks (expansions) left. -1 if there is no limit
+	 * @return The number of expansions left, -1 if no limit.
+	 */
+	public int getLooksLeft(){
+		if (!counterPlay)
+			return -1;
+		return lookLimit - lookCounter.get();
+	}
+
+	/**
+	 * This returns the maximum depth of expansion per move.
+	 * @return The depth limit, 0 if there is no limit.
+	 */
+	public int getDepthLimit(){
+		if (!depthPlay)
+			return 0;
+		return depthLimit;
+	}
+
+	/**
+	 * Gets the number of moves played so far.
+	 * @return The number of moves played
+	 */
+	public int getDepth(){
+		return depth;
+	}
+
+	/**
+	 * Checks whether any of p2's pieces remain, signifying a win by p1
+	 * @return true if p2 has no pieces, false else
+	 */
+	public boolean p1Win(){
+		return board.p1win();
+	}
+
+	/**
+	 * Checks whether any of p1's pieces remain, signifying a win by p2
+	 * @return true if p1 has no pieces, false else
+	 */
+	public boolean p2Win(){
+		return board.p2win();
+	}
+
+	/**
+	 * This prints the current board.
+	 */
+	public void printGame(){
+		board.printBoard();
+	}
+
+	/**
+	 * Lists the pieces the side to move on b can capture. See {@link Game#getThreats(Board)}.
+	 * @param b The board to be analyzed
+	 * @return A Vector of Coords of pieces that could be taken next turn, null if there is no jump
+	 */
+	public Vector <Coord> getThreats(Board b){
+		long[] seqs = new long[Move.MAX_MOVES];
+		int n = Threats.sequences(b, b.p1Turn, seqs);
+		if (n == 0)
+			return null;
+		Vector <Coord> set = new Vector<Coord>();
+		for (int q = 0; q < n; q++){
+			for (int k = 0; k < Threats.count(seqs[q]); k++){
+				int s = Threats.square(seqs[q], k);
+				set.add(new Coord(Board.squareRow(s), Board.squareCol(s), k));
+			}
+		}
+		return set;
+	}
+}
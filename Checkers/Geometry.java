@@ -0,0 +1,153 @@
+package Checkers;
+
+/**
+ * The squares of a square board of some size and the precomputed tables moves are
+ * generated from.
+ * <p>
+ * Squares are numbered as on {@link Board}: the playable square (i,j), where i + j is
+ * even, is s = i * size/2 + j/2, so an 8x8 Geometry numbers its squares exactly as Board
+ * does. P1 starts at low j and moves toward j = size-1, where its men are crowned; P2
+ * moves the other way. A position on a board of up to 10x10 fits in long bitboards.
+ * <p>
+ * Directions are numbered 0 to 3 as (di,dj) = (1,1), (-1,1), (1,-1), (-1,-1), so 0 and 1
+ * are forward for P1 and 2 and 3 forward for P2.
+ * @author mhtong
+ *
+ */
+public final class Geometry {
+	/**The largest size supported, the size of the largest board whose moves fit in a long*/
+	public static final int MAX_SIZE = 10;
+
+	/**Row step of each direction*/
+	public static final int[] DI = {1, -1, 1, -1};
+
+	/**Column step of each direction*/
+	public static final int[] DJ = {1, 1, -1, -1};
+
+	/**Simple move directions in the order Board's generator tries them: P1's forward pair, then P2's*/
+	static final int[] STEP_ORDER = {1, 0, 3, 2};
+
+	/**Geometries already built, by size*/
+	private static final Geometry[] cache = new Geometry[MAX_SIZE + 1];
+
+	/**The number of rows and columns*/
+	private final int size;
+
+	/**The number of playable squares*/
+	private final int squares;
+
+	/**The y coord of each square*/
+	private final int[] row;
+
+	/**The x coord of each square*/
+	private final int[] col;
+
+	/**The neighbour of each square in each direction, -1 at the edge. Indexed [direction][square].*/
+	final int[][] neighbor;
+
+	/**The square two steps away in each direction, where a jump lands, -1 if off the board*/
+	final int[][] jump;
+
+	/**The squares along each diagonal from each square, nearest first. Indexed [direction][square].*/
+	final int[][][] ray;
+
+	/**Squares on which P1's men are crowned*/
+	final long p1CrownRow;
+
+	/**Squares on which P2's men are crowned*/
+	final long p2CrownRow;
+
+	/**
+	 * Gets the geometry of a board size, building its tables on first use.
+	 * @param size The number of rows and columns: even, from 4 to MAX_SIZE
+	 * @return The geometry
+	 * @throws IllegalArgumentException If the size is not supported
+	 */
+	public static synchronized Geometry of(int size){
+		if ((size < 4) || (size > MAX_SIZE) || ((size & 1) != 0))
+			throw new IllegalArgumentException("Unsupported board size " + size);
+		if (cache[size] == null)
+			cache[size] = new Geometry(size);
+		return cache[size];
+	}
+
+	private Geometry(int size){
+		this.size = size;
+		squares = size * size / 2;
+		row = new int[squares];
+		col = new int[squares];
+		long p1Crown = 0, p2Crown = 0;
+		for (int i = 0; i < size; i++){
+			for (int j = 0; j < size; j++){
+				int s = square(i, j);
+				if (s < 0)
+					continue;
+				row[s] = i;
+				col[s] = j;
+				if (j == size - 1)
+					p1Crown |= 1L << s;
+				if (j == 0)
+					p2Crown |= 1L << s;
+			}
+		}
+		p1CrownRow = p1Crown;
+		p2CrownRow = p2Crown;
+		neighbor = new int[4][squares];
+		jump = new int[4][squares];
+		ray = new int[4][squares][];
+		for (int d = 0; d < 4; d++){
+			for (int s = 0; s < squares; s++){
+				neighbor[d][s] = square(row[s] + DI[d], col[s] + DJ[d]);
+				jump[d][s] = (neighbor[d][s] < 0) ? -1 : square(row[s] + 2 * DI[d], col[s] + 2 * DJ[d]);
+				int length = 0;
+				while (square(row[s] + (length + 1) * DI[d], col[s] + (length + 1) * DJ[d]) >= 0)
+					length++;
+				ray[d][s] = new int[length];
+				for (int k = 0; k < length; k++)
+					ray[d][s][k] = square(row[s] + (k + 1) * DI[d], col[s] + (k + 1) * DJ[d]);
+			}
+		}
+	}
+
+	/**
+	 * @return The number of rows and columns
+	 */
+	public int getSize(){
+		return size;
+	}
+
+	/**
+	 * @return The number of playable squares
+	 */
+	public int getSquares(){
+		return squares;
+	}
+
+	/**
+	 * Gets the playable square index of (i,j).
+	 * @param i The y coord
+	 * @param j The x coord
+	 * @return The square index, or -1 if (i,j) is off the board or not playable
+	 */
+	public int square(int i, int j){
+		if ((i < 0) || (i >= size) || (j < 0) || (j >= size) || (((i + j) & 1) != 0))
+			return -1;
+		return i * (size / 2) + (j >> 1);
+	}
+
+	/**
+	 * @param s A square index
+	 * @return The y coord of s
+	 */
+	public int squareRow(int s){
+		return row[s];
+	}
+
+	/**
+	 * @param s A square index
+	 * @return The x coord of s
+	 */
+	public int squareCol(int s){
+		return col[s];
+	}
+}
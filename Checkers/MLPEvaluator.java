@@ -0,0 +1,184 @@
+package Checkers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * A multilayer perceptron Evaluator running on the CPU in plain Java: fully connected
+ * layers with ReLU between them and a logistic output giving the side to move's
+ * expected result.
+ * <p>
+ * Each layer's weights are stored input-major, so a layer adds one contiguous row of
+ * weights per nonzero input. The inputs of the first layer are mostly zero (at most 24 of
+ * the 128 features are set) and ReLU leaves many hidden units at zero, so skipping them
+ * saves most of the work, and the inner loop is a simple multiply-add over the outputs.
+ * Activations of a whole batch are kept in scratch arrays owned by the calling thread.
+ * <p>
+ * Networks are saved as a binary file: "CKNN", a version, the layer sizes, then each
+ * layer's biases and weights as floats.
+ * @author mhtong
+ *
+ */
+public class MLPEvaluator implements Evaluator {
+	/**File header: "CKNN"*/
+	private static final int MAGIC = 0x434B4E4E;
+
+	/**File format version*/
+	private static final int VERSION = 1;
+
+	/**Units per layer, from the Features.SIZE inputs to the single output*/
+	private final int[] sizes;
+
+	/**weights[l][i * sizes[l + 1] + o] connects input i of layer l to output o*/
+	private final float[][] weights;
+
+	/**biases[l][o] of output o of layer l*/
+	private final float[][] biases;
+
+	/**Activation buffers of each thread, one per layer after the input*/
+	private final ThreadLocal<float[][]> scratch = new ThreadLocal<float[][]>();
+
+	/**
+	 * Creates a network with small random weights.
+	 * @param hidden The sizes of the hidden layers
+	 * @param seed The random seed
+	 */
+	public MLPEvaluator(int[] hidden, long seed){
+		sizes = new int[hidden.length + 2];
+		sizes[0] = Features.SIZE;
+		System.arraycopy(hidden, 0, sizes, 1, hidden.length);
+		sizes[sizes.length - 1] = 1;
+		weights = new float[sizes.length - 1][];
+		biases = new float[sizes.length - 1][];
+		Random r = new Random(seed);
+		for (int l = 0; l < weights.length; l++){
+			weights[l] = new float[sizes[l] * sizes[l + 1]];
+			biases[l] = new float[sizes[l + 1]];
+			double scale = Math.sqrt(2.0 / sizes[l]);
+			for (int k = 0; k < weights[l].length; k++)
+				weights[l][k] = (float)(r.nextGaussian() * scale);
+		}
+	}
+
+	/**
+	 * Reads a network saved by {@link #save(File)}.
+	 * @param f The file
+	 * @throws IOException If the file cannot be read or is not a network
+	 */
+	public MLPEvaluator(File f) throws IOException{
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))){
+			if ((in.readInt() != MAGIC) || (in.readInt() != VERSION))
+				throw new IOException(f + " is not a network");
+			sizes = new int[in.readInt()];
+			for (int l = 0; l < sizes.length; l++)
+				sizes[l] = in.readInt();
+			if ((sizes.length < 2) || (sizes[0] != Features.SIZE) || (sizes[sizes.length - 1] != 1))
+				throw new IOException(f + " does not take Features input to one output");
+			weights = new float[sizes.length - 1][];
+			biases = new float[sizes.length - 1][];
+			for (int l = 0; l < weights.length; l++){
+				biases[l] = new float[sizes[l + 1]];
+				for (int o = 0; o < biases[l].length; o++)
+					biases[l][o] = in.readFloat();
+				weights[l] = new float[sizes[l] * sizes[l + 1]];
+				for (int k = 0; k < weights[l].length; k++)
+					weights[l][k] = in.readFloat();
+			}
+		}
+	}
+
+	/**
+	 * Saves the network.
+	 * @param f The file to write
+	 * @throws IOException If the file cannot be written
+	 */
+	public void save(File f) throws IOException{
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)))){
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(sizes.length);
+			for (int size:sizes)
+				out.writeInt(size);
+			for (int l = 0; l < weights.length; l++){
+				for (float v:biases[l])
+					out.writeFloat(v);
+				for (float v:weights[l])
+					out.writeFloat(v);
+			}
+		}
+	}
+
+	/**
+	 * @return The units per layer, inputs first
+	 */
+	public int[] getSizes(){
+		return sizes.clone();
+	}
+
+	public void evaluate(float[] features, int count, float[] out){
+		float[][] act = buffers(count);
+		float[] in = features;
+		for (int l = 0; l < weights.length; l++){
+			int nIn = sizes[l], nOut = sizes[l + 1];
+			float[] w = weights[l];
+			float[] b = biases[l];
+			float[] next = act[l];
+			for (int p = 0; p < count; p++)
+				System.arraycopy(b, 0, next, p * nOut, nOut);
+			for (int p = 0; p < count; p++)
+				accumulate(in, p * nIn, nIn, w, next, p * nOut, nOut);
+			if (l < weights.length - 1){
+				for (int o = 0; o < count * nOut; o++)
+					if (next[o] < 0f)
+						next[o] = 0f;
+			}
+			in = next;
+		}
+		for (int p = 0; p < count; p++)
+			out[p] = (float)(1 / (1 + Math.exp(-in[p])));
+	}
+
+	/**
+	 * Adds one position's weighted inputs to its outputs.
+	 * @param in The inputs
+	 * @param inBase Where the position's inputs start
+	 * @param nIn The number of inputs
+	 * @param w The layer's weights
+	 * @param out The outputs, holding the biases
+	 * @param outBase Where the position's outputs start
+	 * @param nOut The number of outputs
+	 */
+	private static void accumulate(float[] in, int inBase, int nIn, float[] w, float[] out, int outBase, int nOut){
+		for (int i = 0; i < nIn; i++){
+			float x = in[inBase + i];
+			if (x == 0f)
+				continue;
+			int row = i * nOut;
+			for (int o = 0; o < nOut; o++)
+				out[outBase + o] += x * w[row + o];
+		}
+	}
+
+	/**
+	 * Gets the calling thread's activation buffers, growing them to fit a batch.
+	 * @param count The batch size
+	 * @return One buffer per layer after the input
+	 */
+	private float[][] buffers(int count){
+		float[][] act = scratch.get();
+		if ((act == null) || (act[0].length < count * sizes[1])){
+			act = new float[weights.length][];
+			for (int l = 0; l < act.length; l++)
+				act[l] = new float[count * sizes[l + 1]];
+			scratch.set(act);
+		}
+		return act;
+	}
+}
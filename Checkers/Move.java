@@ -0,0 +1,77 @@
+package Checkers;
+
+/**
+ * Static helpers for the compact move encoding used by the allocation-free move
+ * generator. A move is a long holding the from and to squares (playable square
+ * indices, see {@link Board#square(int, int)}), a promotion flag and the bitboard of
+ * captured squares. Moves are written into caller supplied long[] buffers by
+ * {@link Game#expand(Board, long[])} in the same order as the Boards returned by
+ * {@link Game#expand(Board)}, so a buffer index is a valid action index.
+ * @author mhtong
+ *
+ */
+public final class Move {
+	/**The most moves a single position can produce. Buffers must have at least this many entries.*/
+	public static final int MAX_MOVES = 256;
+
+	/**Bit set when a man is crowned by this move (possibly part way through a multi-jump)*/
+	private static final long PROMOTION = 1L << 10;
+
+	private Move(){
+	}
+
+	/**
+	 * Packs a move.
+	 * @param from The square the piece starts on
+	 * @param to The square the piece ends on
+	 * @param captured Bitboard of the squares of all pieces taken
+	 * @param promotion True if a man is crowned by this move
+	 * @return The encoded move
+	 */
+	public static long encode(int from, int to, int captured, boolean promotion){
+		long m = from | (to << 5) | ((long)captured << 32);
+		if (promotion)
+			m |= PROMOTION;
+		return m;
+	}
+
+	/**
+	 * @param m An encoded move
+	 * @return The square the moving piece starts on
+	 */
+	public static int from(long m){
+		return (int)m & 31;
+	}
+
+	/**
+	 * @param m An encoded move
+	 * @return The square the moving piece ends on
+	 */
+	public static int to(long m){
+		return ((int)m >> 5) & 31;
+	}
+
+	/**
+	 * @param m An encoded move
+	 * @return Bitboard of the squares of all pieces taken, 0 for a quiet move
+	 */
+	public static int captured(long m){
+		return (int)(m >>> 32);
+	}
+
+	/**
+	 * @param m An encoded move
+	 * @return True if the move takes at least one piece
+	 */
+	public static boolean isCapture(long m){
+		return (m >>> 32) != 0;
+	}
+
+	/**
+	 * @param m An encoded move
+	 * @return True if a man is crowned by this move
+	 */
+	public static boolean isPromotion(long m){
+		return (m & PROMOTION) != 0;
+	}
+}
@@ -0,0 +1,152 @@
+package Checkers;
+
+import java.util.Arrays;
+
+/**
+ * Orders the moves of a position for alpha-beta search, best guess first: the hash (or
+ * principal variation) move, then captures by the number of pieces they take, then the
+ * killer moves of the ply, then the remaining quiet moves by their history score. Moves
+ * that score the same keep their generated order, so ordering is deterministic.
+ * <p>
+ * The ordering is written as action indices into the move list, so an entry of the order
+ * is still the index of the move in the Vector returned by {@link Game#expand(Board)}.
+ * Solvers working on Vectors can get the matching encoded moves from
+ * {@link Game#expand(Board, long[])}.
+ * <p>
+ * Killers and history are learned from {@link #recordCutoff(long, int, int, boolean)}. An
+ * instance is not thread safe; give each search thread its own. Subclasses can change the
+ * ordering by overriding {@link #score(long, int, boolean)}.
+ * @author mhtong
+ *
+ */
+public class MoveOrdering {
+	/**Score of the hash move*/
+	protected static final int HASH_MOVE = 1 << 30;
+
+	/**Base score of a capture, plus CAPTURE_STEP per piece taken*/
+	protected static final int CAPTURE = 1 << 28;
+
+	/**Score added per piece a capture takes*/
+	protected static final int CAPTURE_STEP = 1 << 16;
+
+	/**Score of the first killer move*/
+	protected static final int KILLER_1 = 1 << 27;
+
+	/**Score of the second killer move*/
+	protected static final int KILLER_2 = KILLER_1 - 1;
+
+	/**History scores are halved when one passes this*/
+	private static final int HISTORY_MAX = 1 << 20;
+
+	/**Two killer moves per ply*/
+	private final long[][] killers;
+
+	/**History scores by side, then from*32+to*/
+	private final int[][] history = new int[2][Board.SQUARES * Board.SQUARES];
+
+	/**Move scores for the list being ordered*/
+	private final int[] scores = new int[Move.MAX_MOVES];
+
+	/**
+	 * Creates an ordering with killer slots for the given number of plies.
+	 * @param maxPly The deepest ply the search can reach
+	 */
+	public MoveOrdering(int maxPly){
+		killers = new long[maxPly][2];
+		clear();
+	}
+
+	/**
+	 * Orders the moves of a position.
+	 * @param moves The moves, as written by Game.expand(Board, long[])
+	 * @param n The number of moves
+	 * @param hashMove The index of a move to search first, -1 if none
+	 * @param ply The distance of the position from the root
+	 * @param p1 True if P1 is to move
+	 * @param order Receives the action indices in the order to search them
+	 */
+	public void order(long[] moves, int n, int hashMove, int ply, boolean p1, int[] order){
+		for (int i = 0; i < n; i++){
+			int s = (i == hashMove) ? HASH_MOVE : score(moves[i], ply, p1);
+			int k = i;
+			while ((k > 0) && (scores[k - 1] < s)){
+				scores[k] = scores[k - 1];
+				order[k] = order[k - 1];
+				k--;
+			}
+			scores[k] = s;
+			order[k] = i;
+		}
+	}
+
+	/**
+	 * Scores one move. Higher scores are searched first.
+	 * @param m The encoded move
+	 * @param ply The distance of the position from the root
+	 * @param p1 True if P1 is to move
+	 * @return The move's score
+	 */
+	protected int score(long m, int ply, boolean p1){
+		if (Move.isCapture(m))
+			return CAPTURE + CAPTURE_STEP * Integer.bitCount(Move.captured(m)) + (Move.isPromotion(m) ? 1 : 0);
+		if (ply < killers.length){
+			if (killers[ply][0] == m)
+				return KILLER_1;
+			if (killers[ply][1] == m)
+				return KILLER_2;
+		}
+		return history[p1 ? 0 : 1][(Move.from(m) << 5) | Move.to(m)];
+	}
+
+	/**
+	 * Records a move that caused a beta cutoff. Quiet moves become killers of the ply and
+	 * gain history in proportion to the depth they were searched to.
+	 * @param m The encoded move
+	 * @param ply The distance of the position from the root
+	 * @param depth The remaining depth of the search at the position
+	 * @param p1 True if P1 was to move
+	 */
+	public void recordCutoff(long m, int ply, int depth, boolean p1){
+		if (Move.isCapture(m))
+			return;
+		if (ply < killers.length){
+			long[] k = killers[ply];
+			if (k[0] != m){
+				k[1] = k[0];
+				k[0] = m;
+			}
+		}
+		int[] h = history[p1 ? 0 : 1];
+		int idx = (Move.from(m) << 5) | Move.to(m);
+		h[idx] += depth * depth;
+		if (h[idx] > HISTORY_MAX)
+			for (int i = 0; i < h.length; i++)
+				h[i] >>= 1;
+	}
+
+	/**
+	 * Forgets all killers and history.
+	 */
+	public void clear(){
+		for (long[] k:killers){
+			k[0] = -1;
+			k[1] = -1;
+		}
+		for (int[] h:history)
+			Arrays.fill(h, 0);
+	}
+
+	/**
+	 * Prepares for the search of a new move: killers are dropped, since the plies have
+	 * shifted, and history is halved so it follows the game.
+	 */
+	public void newSearch(){
+		for (long[] k:killers){
+			k[0] = -1;
+			k[1] = -1;
+		}
+		for (int[] h:history)
+			for (int i = 0; i < h.length; i++)
+				h[i] >>= 1;
+	}
+}
@@ -0,0 +1,268 @@
+package Checkers;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An opening book: for positions seen in earlier games, how often each move went on to
+ * win, draw or lose for the side that played it.
+ * <p>
+ * A book is compiled by a {@link Builder} from finished games and saved as a binary file
+ * of fixed size records (position hash, action index, wins, draws, losses) sorted by hash
+ * and action. The file is opened through a MappedByteBuffer and searched in place, so a
+ * lookup is a binary search over the mapped records with no parsing or heap use. A book
+ * can be read by any number of threads at once.
+ * <p>
+ * Positions are keyed by Board.getHash(), which includes the side to move, and moves are
+ * action indices into the Vector returned by Game.expand.
+ * @author mhtong
+ *
+ */
+public class OpeningBook {
+	/**File header: "CKOB"*/
+	private static final int MAGIC = 0x434B4F42;
+
+	/**File format version*/
+	private static final int VERSION = 1;
+
+	/**Header length in bytes*/
+	private static final int HEADER = 16;
+
+	/**Record length in bytes: hash, action, wins, draws, losses*/
+	private static final int RECORD = 24;
+
+	/**One move's statistics*/
+	public static class Entry {
+		/**The move, as an action index*/
+		public final int move;
+
+		/**Games the side playing the move went on to win*/
+		public final int wins;
+
+		/**Games that were tied*/
+		public final int draws;
+
+		/**Games the side playing the move went on to lose*/
+		public final int losses;
+
+		Entry(int move, int wins, int draws, int losses){
+			this.move = move;
+			this.wins = wins;
+			this.draws = draws;
+			this.losses = losses;
+		}
+
+		/**
+		 * @return The number of games the move was played in
+		 */
+		public int games(){
+			return wins + draws + losses;
+		}
+
+		/**
+		 * @return The mover's score fraction, counting a draw as half a win
+		 */
+		public double score(){
+			return (wins + 0.5 * draws) / games();
+		}
+
+		public String toString(){
+			return String.format("move %d: +%d -%d =%d", move, wins, losses, draws);
+		}
+	}
+
+	/**The mapped records*/
+	private final MappedByteBuffer records;
+
+	/**The number of records*/
+	private final int size;
+
+	/**
+	 * Opens a book file.
+	 * @param f The file, as written by Builder.write
+	 * @throws IOException If the file cannot be read or is not a book
+	 */
+	public OpeningBook(File f) throws IOException{
+		try (RandomAccessFile raf = new RandomAccessFile(f, "r")){
+			if ((raf.length() < HEADER) || (raf.readInt() != MAGIC) || (raf.readInt() != VERSION))
+				throw new IOException(f + " is not an opening book");
+			size = raf.readInt();
+			if (raf.length() != HEADER + (long)size * RECORD)
+				throw new IOException(f + " is truncated");
+			records = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, HEADER, (long)size * RECORD);
+		}
+	}
+
+	/**
+	 * @return The number of (position, move) records in the book
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Gets the statistics of every move the book has for a position.
+	 * @param b The position
+	 * @return The moves, in action order; empty if the position is not in the book
+	 */
+	public List<Entry> lookup(Board b){
+		long key = b.getHash();
+		List<Entry> moves = new ArrayList<Entry>();
+		for (int r = first(key); (r < size) && (records.getLong(r * RECORD) == key); r++){
+			int at = r * RECORD;
+			moves.add(new Entry(records.getInt(at + 8), records.getInt(at + 12), records.getInt(at + 16),
+					records.getInt(at + 20)));
+		}
+		return moves;
+	}
+
+	/**
+	 * Chooses the book move for a position: the one with the best score among those played
+	 * in at least minGames games, the most played on a tie.
+	 * @param b The position
+	 * @param minGames The fewest games a move needs to be trusted
+	 * @return An action index, -1 if the book has no move for b
+	 */
+	public int selectMove(Board b, int minGames){
+		long key = b.getHash();
+		int best = -1;
+		double bestScore = -1;
+		int bestGames = 0;
+		for (int r = first(key); (r < size) && (records.getLong(r * RECORD) == key); r++){
+			int at = r * RECORD;
+			int w = records.getInt(at + 12), d = records.getInt(at + 16), l = records.getInt(at + 20);
+			int games = w + d + l;
+			if (games < Math.max(1, minGames))
+				continue;
+			double score = (w + 0.5 * d) / games;
+			if ((score > bestScore) || ((score == bestScore) && (games > bestGames))){
+				best = records.getInt(at + 8);
+				bestScore = score;
+				bestGames = games;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Finds the first record whose hash is not less than key.
+	 * @param key A position hash
+	 * @return The record number, size if there is none
+	 */
+	private int first(long key){
+		int lo = 0, hi = size;
+		while (lo < hi){
+			int mid = (lo + hi) >>> 1;
+			if (records.getLong(mid * RECORD) < key)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Compiles finished games into a book. addGame may be called from several threads.
+	 */
+	public static class Builder {
+		/**Plies of each game that go into the book*/
+		private final int plies;
+
+		/**Wins, draws and losses by position hash, then action index*/
+		private final Map<Long, Map<Integer, int[]>> stats = new HashMap<Long, Map<Integer, int[]>>();
+
+		/**Games added*/
+		private int games;
+
+		/**
+		 * Creates an empty builder.
+		 * @param plies The number of plies from the start of each game to record
+		 */
+		public Builder(int plies){
+			this.plies = plies;
+		}
+
+		/**
+		 * Adds a game played from the start position. Its moves are replayed without a
+		 * GameSession, so they cost no looks.
+		 * @param actions The action index chosen at each ply
+		 * @param result 1 if P1 won, -1 if P2 won, 0 for a tie
+		 */
+		public void addGame(int[] actions, int result){
+			Board b = new Board();
+			long[] moves = new long[Move.MAX_MOVES];
+			long[] keys = new long[Math.min(plies, actions.length)];
+			boolean[] p1 = new boolean[keys.length];
+			int n = 0;
+			for (; n < keys.length; n++){
+				int count = BoardManipulator.generate(b, moves, 0);
+				if ((actions[n] < 0) || (actions[n] >= count))
+					break;
+				keys[n] = b.getHash();
+				p1[n] = b.p1Turn;
+				b.makeMove(moves[actions[n]]);
+			}
+			synchronized (this){
+				for (int ply = 0; ply < n; ply++){
+					int[] s = stats.computeIfAbsent(keys[ply], k -> new HashMap<Integer, int[]>())
+							.computeIfAbsent(actions[ply], k -> new int[3]);
+					int r = p1[ply] ? result : -result;
+					s[(r > 0) ? 0 : (r == 0) ? 1 : 2]++;
+				}
+				games++;
+			}
+		}
+
+		/**
+		 * @return The number of games added
+		 */
+		public synchronized int getGames(){
+			return games;
+		}
+
+		/**
+		 * Writes the book.
+		 * @param f The file to write
+		 * @param minGames Moves played in fewer games are left out
+		 * @return The number of records written
+		 * @throws IOException If the file cannot be written
+		 */
+		public synchronized int write(File f, int minGames) throws IOException{
+			List<Long> keys = new ArrayList<Long>(stats.keySet());
+			Collections.sort(keys);
+			List<long[]> rows = new ArrayList<long[]>();
+			for (long key:keys){
+				List<Integer> moves = new ArrayList<Integer>(stats.get(key).keySet());
+				Collections.sort(moves);
+				for (int m:moves){
+					int[] s = stats.get(key).get(m);
+					if (s[0] + s[1] + s[2] >= minGames)
+						rows.add(new long[]{key, m, s[0], s[1], s[2]});
+				}
+			}
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)))){
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(rows.size());
+				out.writeInt(0);
+				for (long[] row:rows){
+					out.writeLong(row[0]);
+					for (int i = 1; i < row.length; i++)
+						out.writeInt((int)row[i]);
+				}
+			}
+			return rows.size();
+		}
+	}
+}
@@ -0,0 +1,370 @@
+package Checkers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Counts the leaf nodes of the full game tree to a fixed depth, to check a move generator
+ * against the reference one in BoardManipulator.expand(). The optimized count uses the
+ * move buffer generator with make/unmake and bulk counting (the last ply counts moves
+ * without playing them). It can split the root moves over several threads and keep
+ * subtree counts in a hash table, shared lock-free by the threads.
+ * <p>
+ * Divide mode prints the count below each root move from both generators side by side
+ * and marks any move where they, or the boards they lead to, differ.
+ * <p>
+ * Verify mode checks the variant generator in {@link Rules}: perft of the ENGLISH and
+ * INTERNATIONAL starting positions against the published counts, and the table-driven
+ * generator against Board's on every position of a set of random ENGLISH games.
+ * <p>
+ * Usage: java Checkers.Perft [-threads n] [-hash mb] [-divide] [-pos position] depth
+ * <br>or: java Checkers.Perft -verify [games]
+ * @author mhtong
+ *
+ */
+public class Perft {
+	/**Published perft counts of the starting position under {@link Rules#ENGLISH}, from depth 1*/
+	private static final long[] ENGLISH_PERFT = {7, 49, 302, 1469, 7361, 36768, 179740, 845931};
+
+	/**Published perft counts of the starting position under {@link Rules#INTERNATIONAL}, from depth 1*/
+	private static final long[] INTERNATIONAL_PERFT = {9, 81, 658, 4265, 27117, 167140, 1049442};
+
+	/**The longest random game verify plays*/
+	private static final int VERIFY_PLIES = 200;
+
+	/**Threads used to split the root*/
+	private final int threads;
+
+	/**The cache, two longs per entry: key^count and count. null if not caching.*/
+	private final long[] cache;
+
+	/**Entry count minus one*/
+	private final int mask;
+
+	/**
+	 * Creates a perft counter.
+	 * @param threads The number of threads to split the root moves over
+	 * @param cacheMegabytes The size of the subtree count cache, 0 for none
+	 */
+	public Perft(int threads, int cacheMegabytes){
+		this.threads = Math.max(1, threads);
+		if (cacheMegabytes > 0){
+			int entries = Integer.highestOneBit((int)Math.min(((long)cacheMegabytes << 20) / 16, 1 << 28));
+			cache = new long[entries * 2];
+			mask = entries - 1;
+		}
+		else{
+			cache = null;
+			mask = 0;
+		}
+	}
+
+	/**
+	 * Counts the leaves below b with the optimized generator.
+	 * @param b The root board, left unchanged
+	 * @param depth The depth to count to (at least 1)
+	 * @return The number of leaf nodes
+	 */
+	public long perft(Board b, int depth){
+		long total = 0;
+		for (long n:divide(b, depth))
+			total += n;
+		return total;
+	}
+
+	/**
+	 * Counts the leaves below each root move with the optimized generator, splitting the
+	 * root moves over this counter's threads.
+	 * @param b The root board, left unchanged
+	 * @param depth The depth to count to (at least 1)
+	 * @return The count for each root move, in action order
+	 */
+	public long[] divide(final Board b, final int depth){
+		long[] root = new long[Move.MAX_MOVES];
+		int n = BoardManipulator.generate(b, root, 0);
+		long[] counts = new long[n];
+		if (depth <= 1){
+			for (int i = 0; i < n; i++)
+				counts[i] = 1;
+			return counts;
+		}
+		if (threads == 1){
+			Walker w = new Walker(b);
+			for (int i = 0; i < n; i++){
+				int undo = w.board.makeMove(root[i]);
+				counts[i] = w.count(depth - 1, 0);
+				w.board.unmakeMove(root[i], undo);
+			}
+			return counts;
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try{
+			List<Future<Long>> parts = new ArrayList<Future<Long>>();
+			for (int i = 0; i < n; i++){
+				final long m = root[i];
+				parts.add(pool.submit(() -> {
+					Walker w = new Walker(b);
+					w.board.makeMove(m);
+					return w.count(depth - 1, 0);
+				}));
+			}
+			for (int i = 0; i < n; i++)
+				counts[i] = parts.get(i).get();
+		}
+		catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException e){
+			throw new RuntimeException(e.getCause());
+		}
+		finally{
+			pool.shutdown();
+		}
+		return counts;
+	}
+
+	/**
+	 * Counts the leaves below b with the reference generator, BoardManipulator.expand().
+	 * @param b The root board
+	 * @param depth The depth to count to (at least 1)
+	 * @return The number of leaf nodes
+	 */
+	public static long perftReference(Board b, int depth){
+		Vector<Board> next = new BoardManipulator(b).expand();
+		if (depth <= 1)
+			return next.size();
+		long total = 0;
+		for (Board c:next)
+			total += perftReference(c, depth - 1);
+		return total;
+	}
+
+	/**
+	 * One thread's walk of the tree, on its own board and move buffers.
+	 */
+	private class Walker {
+		final Board board;
+
+		final long[][] moves = new long[64][Move.MAX_MOVES];
+
+		Walker(Board b){
+			board = new Board(b.p1, b.p2, b.kings, b.hash);
+			board.p1Turn = b.p1Turn;
+			board.depth = b.depth;
+		}
+
+		long count(int depth, int ply){
+			long[] list = moves[ply];
+			int n = BoardManipulator.generate(board, list, 0);
+			if (depth == 1)
+				return n;
+			long key = 0;
+			if (cache != null){
+				key = board.getHash() ^ (depth * 0x9E3779B97F4A7C15L);
+				int slot = ((int)key & mask) << 1;
+				long c = cache[slot + 1];
+				if ((cache[slot] ^ c) == key)
+					return c;
+			}
+			long total = 0;
+			for (int i = 0; i < n; i++){
+				int undo = board.makeMove(list[i]);
+				total += count(depth - 1, ply + 1);
+				board.unmakeMove(list[i], undo);
+			}
+			if (cache != null){
+				int slot = ((int)key & mask) << 1;
+				cache[slot + 1] = total;
+				cache[slot] = key ^ total;
+			}
+			return total;
+		}
+	}
+
+	/**
+	 * Describes a move as from-to in board coordinates, with x for jumps.
+	 * @param m An encoded move
+	 * @return e.g. "(2,2)-(3,3)" or "(2,2)x(6,2)"
+	 */
+	public static String describe(long m){
+		int f = Move.from(m);
+		int t = Move.to(m);
+		return "(" + Board.squareRow(f) + "," + Board.squareCol(f) + ")" +
+				(Move.isCapture(m) ? "x" : "-") +
+				"(" + Board.squareRow(t) + "," + Board.squareCol(t) + ")";
+	}
+
+	/**
+	 * Parses a position written as the side to move ('r' for P1, 'b' for P2), a colon, and
+	 * the 32 playable squares in index order using printBoard's letters and '.' for empty.
+	 * @param s The position text
+	 * @return The board
+	 */
+	public static Board parse(String s){
+		if ((s.length() != Board.SQUARES + 2) || (s.charAt(1) != ':'))
+			throw new IllegalArgumentException("Bad position: " + s);
+		int p1 = 0, p2 = 0, kings = 0;
+		for (int q = 0; q < Board.SQUARES; q++){
+			char c = s.charAt(q + 2);
+			int bit = 1 << q;
+			if ((c == 'r') || (c == 'R'))
+				p1 |= bit;
+			else if ((c == 'b') || (c == 'B'))
+				p2 |= bit;
+			else if (c != '.')
+				throw new IllegalArgumentException("Bad square '" + c + "' in: " + s);
+			if ((c == 'R') || (c == 'B'))
+				kings |= bit;
+		}
+		Board b = new Board(p1, p2, kings, Zobrist.hash(p1, p2, kings));
+		b.p1Turn = s.charAt(0) == 'r';
+		b.toArray();
+		return b;
+	}
+
+	/**
+	 * Writes a position in the form read by parse.
+	 * @param b The board
+	 * @return The position text
+	 */
+	public static String format(Board b){
+		StringBuilder sb = new StringBuilder(b.p1Turn ? "r:" : "b:");
+		for (int q = 0; q < Board.SQUARES; q++){
+			int v = b.get(Board.squareRow(q), Board.squareCol(q));
+			sb.append(".rRbB".charAt((v < 0) ? 2 - v : v));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Checks the variant generator: perft of the ENGLISH and INTERNATIONAL starting
+	 * positions against the published counts, then Rules.generateTables against Board's
+	 * generator, move by move and in order, on every position of random ENGLISH games.
+	 * Prints each mismatch.
+	 * @param games The number of random games to play
+	 * @param seed The seed of the random games
+	 * @return The number of checks that failed
+	 */
+	public static int verify(int games, long seed){
+		int bad = verifyPerft(Rules.ENGLISH, "English", ENGLISH_PERFT) +
+				verifyPerft(Rules.INTERNATIONAL, "International", INTERNATIONAL_PERFT);
+		Random random = new Random(seed);
+		long[] fast = new long[VariantBoard.MAX_MOVES];
+		long[] tables = new long[VariantBoard.MAX_MOVES];
+		long positions = 0;
+		for (int g = 0; g < games; g++){
+			VariantBoard b = new VariantBoard(Rules.ENGLISH);
+			for (int ply = 0; ply < VERIFY_PLIES; ply++){
+				int n = Rules.ENGLISH.generate(b, fast);
+				int m = Rules.ENGLISH.generateTables(b, tables);
+				positions++;
+				boolean same = n == m;
+				for (int k = 0; same && (k < n); k++)
+					same = fast[k] == tables[k];
+				if (!same){
+					bad++;
+					System.out.println("Generators differ in game " + g + " at ply " + ply + ":");
+					b.printBoard();
+				}
+				if (n == 0)
+					break;
+				b.makeMove(fast[random.nextInt(n)]);
+			}
+		}
+		System.out.println(String.format("%d positions from %d random games: %s", positions, games,
+				(bad == 0) ? "table generator agrees" : bad + " checks failed"));
+		return bad;
+	}
+
+	/**
+	 * Checks perft of a variant's starting position against the published counts.
+	 * @param rules The variant
+	 * @param name Its name, for the report
+	 * @param counts The published counts, from depth 1
+	 * @return The number of depths that differ
+	 */
+	private static int verifyPerft(Rules rules, String name, long[] counts){
+		int bad = 0;
+		for (int d = 1; d <= counts.length; d++){
+			long n = new VariantBoard(rules).perft(d);
+			boolean same = n == counts[d - 1];
+			if (!same)
+				bad++;
+			System.out.println(String.format("%-13s perft(%d) = %10d%s", name, d, n,
+					same ? "" : "  <-- expected " + counts[d - 1]));
+		}
+		return bad;
+	}
+
+	public static void main(String args[]){
+		if ((args.length > 0) && args[0].equals("-verify")){
+			int games = (args.length > 1) ? Integer.parseInt(args[1]) : 1000;
+			if (verify(games, 1) != 0)
+				System.exit(1);
+			return;
+		}
+		int threads = 1;
+		int hash = 0;
+		boolean divide = false;
+		Board b = new Board();
+		int depth = -1;
+		for (int a = 0; a < args.length; a++){
+			if (args[a].equals("-threads"))
+				threads = Integer.parseInt(args[++a]);
+			else if (args[a].equals("-hash"))
+				hash = Integer.parseInt(args[++a]);
+			else if (args[a].equals("-divide"))
+				divide = true;
+			else if (args[a].equals("-pos"))
+				b = parse(args[++a]);
+			else
+				depth = Integer.parseInt(args[a]);
+		}
+		if (depth < 1){
+			System.out.println("Usage: java Checkers.Perft [-threads n] [-hash mb] [-divide] [-pos position] depth");
+			System.out.println("   or: java Checkers.Perft -verify [games]");
+			return;
+		}
+		Perft p = new Perft(threads, hash);
+		if (!divide){
+			long start = System.nanoTime();
+			long n = p.perft(b, depth);
+			double secs = (System.nanoTime() - start) / 1e9;
+			System.out.println(String.format("perft(%d) = %d  %.3fs  %.0f nodes/sec", depth, n, secs, n / secs));
+			return;
+		}
+		long[] root = new long[Move.MAX_MOVES];
+		int n = BoardManipulator.generate(b, root, 0);
+		Vector<Board> ref = new BoardManipulator(b).expand();
+		long[] counts = p.divide(b, depth);
+		long total = 0, refTotal = 0;
+		int bad = 0;
+		for (int i = 0; i < Math.max(n, ref.size()); i++){
+			long c = (i < n) ? counts[i] : -1;
+			long r = (i < ref.size()) ? perftReference(ref.get(i), depth - 1) : -1;
+			if (depth == 1)
+				r = (i < ref.size()) ? 1 : -1;
+			boolean same = (c == r);
+			if (same && (i < n)){
+				Board mb = new Board(b);
+				mb.makeMove(root[i]);
+				Board rb = ref.get(i);
+				same = (mb.p1 == rb.p1) && (mb.p2 == rb.p2) && (mb.kings == rb.kings) && (mb.p1Turn == rb.p1Turn);
+			}
+			if (!same)
+				bad++;
+			total += Math.max(c, 0);
+			refTotal += Math.max(r, 0);
+			System.out.println(String.format("%3d %-14s %12d %12d%s", i,
+					(i < n) ? describe(root[i]) : "-", c, r, same ? "" : "  <-- differs"));
+		}
+		System.out.println(String.format("total              %12d %12d", total, refTotal));
+		System.out.println((bad == 0) ? "generators agree" : bad + " root moves differ");
+	}
+}
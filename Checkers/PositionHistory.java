@@ -0,0 +1,236 @@
+package Checkers;
+
+import java.util.Arrays;
+
+/**
+ * The positions of a game so far, for detecting draws by repetition and by the move rule.
+ * <p>
+ * Positions are pushed as moves are made and popped as they are taken back, so a search
+ * can keep one history for the game plus the line it is searching. Besides the stack of
+ * hashes, a small open addressing table counts how often each hash is on the stack, so
+ * asking how many times a position has occurred costs one probe however long the game.
+ * <p>
+ * A capture or a man's move can never be undone, so no position before one can repeat a
+ * position after it; the history tracks how many plies have passed since the last one
+ * for the move rule.
+ * @author mhtong
+ *
+ */
+public class PositionHistory {
+	/**Occurrences of a position that make a draw*/
+	public static final int REPETITIONS = 3;
+
+	/**Plies with no capture and no man moved that make a draw: 40 moves for each side*/
+	public static final int DEFAULT_DRAW_PLIES = 80;
+
+	/**Plies without a capture or man move that make a draw*/
+	private final int drawPlies;
+
+	/**The hash of each position, oldest first*/
+	private long[] hashes;
+
+	/**For each position, the plies since the last irreversible move when it was reached*/
+	private int[] reversible;
+
+	/**The number of positions*/
+	private int size;
+
+	/**Hashes in the count table; a slot is empty when its count is 0*/
+	private long[] keys;
+
+	/**Occurrences of each hash in keys*/
+	private int[] counts;
+
+	/**
+	 * Creates an empty history with the default move rule.
+	 */
+	public PositionHistory(){
+		this(DEFAULT_DRAW_PLIES);
+	}
+
+	/**
+	 * Creates an empty history.
+	 * @param drawPlies Plies without a capture or man move that make a draw, 0 for no limit
+	 */
+	public PositionHistory(int drawPlies){
+		this.drawPlies = drawPlies;
+		hashes = new long[256];
+		reversible = new int[256];
+		keys = new long[512];
+		counts = new int[512];
+	}
+
+	/**
+	 * Creates a copy of another history.
+	 * @param h The history to copy
+	 */
+	public PositionHistory(PositionHistory h){
+		drawPlies = h.drawPlies;
+		hashes = h.hashes.clone();
+		reversible = h.reversible.clone();
+		size = h.size;
+		keys = h.keys.clone();
+		counts = h.counts.clone();
+	}
+
+	/**
+	 * Makes this history a copy of another, reusing this one's arrays where they fit.
+	 * @param h The history to copy
+	 */
+	public void copyFrom(PositionHistory h){
+		clear();
+		for (int k = 0; k < h.size; k++)
+			push(h.hashes[k], (k == 0) || (h.reversible[k] == 0));
+	}
+
+	/**
+	 * Tells whether a move can never be undone: it captures, or moves a man.
+	 * @param b The board the move is made on
+	 * @param m The move
+	 * @return true if no position before the move can occur after it
+	 */
+	public static boolean irreversible(Board b, long m){
+		return Move.isCapture(m) || ((b.kings & (1 << Move.from(m))) == 0);
+	}
+
+	/**
+	 * Adds a position.
+	 * @param hash The position's hash, Board.getHash()
+	 * @param irreversible True if the move to it captured or moved a man, or it is the first position
+	 */
+	public void push(long hash, boolean irreversible){
+		if (size == hashes.length){
+			hashes = Arrays.copyOf(hashes, 2 * size);
+			reversible = Arrays.copyOf(reversible, 2 * size);
+			rehash(2 * keys.length);
+		}
+		reversible[size] = (irreversible || (size == 0)) ? 0 : reversible[size - 1] + 1;
+		hashes[size++] = hash;
+		counts[slot(hash)]++;
+	}
+
+	/**
+	 * Removes the latest position.
+	 */
+	public void pop(){
+		long hash = hashes[--size];
+		int s = slot(hash);
+		if (--counts[s] == 0)
+			remove(s);
+	}
+
+	/**
+	 * Removes every position.
+	 */
+	public void clear(){
+		size = 0;
+		Arrays.fill(keys, 0);
+		Arrays.fill(counts, 0);
+	}
+
+	/**
+	 * @return The number of positions
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Counts the occurrences of a position.
+	 * @param hash The position's hash
+	 * @return How many times it is in the history
+	 */
+	public int count(long hash){
+		int mask = keys.length - 1;
+		for (int s = mix(hash) & mask; counts[s] != 0; s = (s + 1) & mask)
+			if (keys[s] == hash)
+				return counts[s];
+		return 0;
+	}
+
+	/**
+	 * @return How many times the latest position has occurred, counting itself
+	 */
+	public int repetitions(){
+		return (size == 0) ? 0 : count(hashes[size - 1]);
+	}
+
+	/**
+	 * @return Plies since the last capture or man move
+	 */
+	public int reversiblePlies(){
+		return (size == 0) ? 0 : reversible[size - 1];
+	}
+
+	/**
+	 * Tells whether the game is drawn at the latest position: it has occurred REPETITIONS
+	 * times, or the move rule has run out.
+	 * @return true if the game is a draw
+	 */
+	public boolean isDraw(){
+		return (repetitions() >= REPETITIONS) || ((drawPlies > 0) && (reversiblePlies() >= drawPlies));
+	}
+
+	/**
+	 * Tells whether a searcher should score the latest position as a draw: it has occurred
+	 * before, so the side that could avoid the cycle gains nothing by entering it, or the
+	 * move rule has run out.
+	 * @return true if the position should score as a draw
+	 */
+	public boolean isCycle(){
+		return (repetitions() >= 2) || ((drawPlies > 0) && (reversiblePlies() >= drawPlies));
+	}
+
+	/**
+	 * @return The hash slot of a hash, claiming an empty one if it is not in the table
+	 */
+	private int slot(long hash){
+		int mask = keys.length - 1;
+		int s = mix(hash) & mask;
+		while ((counts[s] != 0) && (keys[s] != hash))
+			s = (s + 1) & mask;
+		keys[s] = hash;
+		return s;
+	}
+
+	/**
+	 * Empties a slot, moving later entries of its cluster back so every probe still finds them.
+	 * @param s The slot
+	 */
+	private void remove(int s){
+		int mask = keys.length - 1;
+		keys[s] = 0;
+		int hole = s;
+		for (int t = (s + 1) & mask; counts[t] != 0; t = (t + 1) & mask){
+			int home = mix(keys[t]) & mask;
+			if (((t - home) & mask) >= ((t - hole) & mask)){
+				keys[hole] = keys[t];
+				counts[hole] = counts[t];
+				keys[t] = 0;
+				counts[t] = 0;
+				hole = t;
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds the count table at a new size.
+	 * @param capacity The number of slots, a power of two
+	 */
+	private void rehash(int capacity){
+		long[] oldKeys = keys;
+		int[] oldCounts = counts;
+		keys = new long[capacity];
+		counts = new int[capacity];
+		for (int s = 0; s < oldKeys.length; s++){
+			if (oldCounts[s] == 0)
+				continue;
+			int t = slot(oldKeys[s]);
+			counts[t] = oldCounts[s];
+		}
+	}
+
+	private static int mix(long hash){
+		return (int)(hash ^ (hash >>> 32));
+	}
+}
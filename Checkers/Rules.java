@@ -0,0 +1,299 @@
+package Checkers;
+
+/**
+ * The rules of a draughts variant: the board size, how many rows each side starts on, and
+ * how pieces move and capture. A Rules object generates the moves of a
+ * {@link VariantBoard}.
+ * <p>
+ * Every variant shares the basics of this game: men step diagonally forward, a side that
+ * can capture must, and a capture continues while the capturing piece can take another
+ * piece. The variants differ in
+ * <ul>
+ * <li>flying kings, which move and capture along a whole diagonal rather than one square;</li>
+ * <li>whether men may capture backwards;</li>
+ * <li>whether a side must choose a capture that takes the most pieces;</li>
+ * <li>whether a man that reaches the crown row in the middle of a capture is crowned at
+ * once and captures on as a king, or stays a man unless the capture ends there;</li>
+ * <li>whether captured pieces leave the board as they are jumped, or only when the move
+ * ends, blocking the capturing piece until then and never being jumped twice.</li>
+ * </ul>
+ * <p>
+ * Moves are generated from the geometry's precomputed neighbour, jump and ray tables,
+ * looping over the occupied squares only. The rules of this game on 8x8 ({@link #ENGLISH})
+ * do not go through the tables at all: they are checked once, when the Rules is made, and
+ * generate hands such positions straight to the bitboard generator Game uses.
+ * @author mhtong
+ *
+ */
+public final class Rules {
+	/**This game's rules: 8x8, men capture forward only, no flying kings, free choice of capture*/
+	public static final Rules ENGLISH = new Rules(8, 3, false, false, false, true, true);
+
+	/**Russian draughts: 8x8 with flying kings, men capturing backwards, and free choice of capture*/
+	public static final Rules RUSSIAN = new Rules(8, 3, true, true, false, true, false);
+
+	/**Brazilian draughts: the international rules on 8x8*/
+	public static final Rules BRAZILIAN = new Rules(8, 3, true, true, true, false, false);
+
+	/**International draughts: 10x10, flying kings, men capturing backwards, maximum capture*/
+	public static final Rules INTERNATIONAL = new Rules(10, 4, true, true, true, false, false);
+
+	/**The squares of the board*/
+	private final Geometry geometry;
+
+	/**The rows each side starts on*/
+	private final int startRows;
+
+	/**True if kings move and capture along a whole diagonal*/
+	private final boolean flyingKings;
+
+	/**True if men may capture backwards*/
+	private final boolean menCaptureBackward;
+
+	/**True if a capture must take as many pieces as possible*/
+	private final boolean maximumCapture;
+
+	/**True if a man crowned in the middle of a capture captures on as a king*/
+	private final boolean crownMidCapture;
+
+	/**True if captured pieces leave the board as they are jumped*/
+	private final boolean removeAsCaptured;
+
+	/**True if these are Board's rules on Board's geometry, so Board's generator applies*/
+	private final boolean standard;
+
+	/**
+	 * Creates a variant.
+	 * @param size The number of rows and columns, even, from 4 to Geometry.MAX_SIZE
+	 * @param startRows The rows each side starts on, fewer than size/2
+	 * @param flyingKings True if kings move and capture along a whole diagonal
+	 * @param menCaptureBackward True if men may capture backwards
+	 * @param maximumCapture True if a capture must take as many pieces as possible
+	 * @param crownMidCapture True if a man crowned in the middle of a capture captures on as a king
+	 * @param removeAsCaptured True if captured pieces leave the board as they are jumped
+	 * @throws IllegalArgumentException If the size or the start rows are out of range
+	 */
+	public Rules(int size, int startRows, boolean flyingKings, boolean menCaptureBackward, boolean maximumCapture,
+			boolean crownMidCapture, boolean removeAsCaptured){
+		geometry = Geometry.of(size);
+		if ((startRows < 1) || (2 * startRows >= size))
+			throw new IllegalArgumentException("Cannot start " + startRows + " rows deep on a board of size " + size);
+		this.startRows = startRows;
+		this.flyingKings = flyingKings;
+		this.menCaptureBackward = menCaptureBackward;
+		this.maximumCapture = maximumCapture;
+		this.crownMidCapture = crownMidCapture;
+		this.removeAsCaptured = removeAsCaptured;
+		standard = (size == Board.BOARDSIZE) && !flyingKings && !menCaptureBackward && !maximumCapture &&
+				crownMidCapture && removeAsCaptured;
+	}
+
+	/**
+	 * @return The squares of the board
+	 */
+	public Geometry getGeometry(){
+		return geometry;
+	}
+
+	/**
+	 * @return The rows each side starts on
+	 */
+	public int getStartRows(){
+		return startRows;
+	}
+
+	/**
+	 * @return True if kings move and capture along a whole diagonal
+	 */
+	public boolean hasFlyingKings(){
+		return flyingKings;
+	}
+
+	/**
+	 * @return True if men may capture backwards
+	 */
+	public boolean menCaptureBackward(){
+		return menCaptureBackward;
+	}
+
+	/**
+	 * @return True if a capture must take as many pieces as possible
+	 */
+	public boolean hasMaximumCapture(){
+		return maximumCapture;
+	}
+
+	/**
+	 * @return True if a man crowned in the middle of a capture captures on as a king
+	 */
+	public boolean crownsMidCapture(){
+		return crownMidCapture;
+	}
+
+	/**
+	 * @return True if captured pieces leave the board as they are jumped
+	 */
+	public boolean removesAsCaptured(){
+		return removeAsCaptured;
+	}
+
+	/**
+	 * Generates the moves of the side to move. If any capture is possible only captures
+	 * are generated, and under maximum capture only those taking the most pieces. Where
+	 * captured pieces stay on the board until the move ends, two capture paths with the
+	 * same ends and the same captured pieces are one move.
+	 * @param b A position played under these rules
+	 * @param buf The buffer to fill, with room for {@link VariantBoard#MAX_MOVES} moves
+	 * @return The number of moves written
+	 */
+	public int generate(VariantBoard b, long[] buf){
+		if (standard)
+			return generateStandard(b, buf);
+		return generateTables(b, buf);
+	}
+
+	/**
+	 * Generates moves from the geometry's tables. generate calls this for every variant
+	 * but ENGLISH. Called on an ENGLISH position it must give the same moves, in the same
+	 * order, as Board's generator; {@link Perft#verify(int, long)} checks that.
+	 * @param b A position played under these rules
+	 * @param buf The buffer to fill
+	 * @return The number of moves written
+	 */
+	int generateTables(VariantBoard b, long[] buf){
+		boolean p1 = b.p1Turn;
+		long own = p1 ? b.p1 : b.p2;
+		long opp = p1 ? b.p2 : b.p1;
+		long occupied = b.p1 | b.p2;
+		long crownRow = p1 ? geometry.p1CrownRow : geometry.p2CrownRow;
+		int n = 0;
+		for (long pieces = own; pieces != 0; pieces &= pieces - 1){
+			int s = Long.numberOfTrailingZeros(pieces);
+			boolean king = (b.kings & (1L << s)) != 0;
+			n = captures(s, s, p1, king, king, occupied & ~(1L << s), opp, 0, crownRow, buf, n);
+		}
+		if (n > 0)
+			return (maximumCapture || !removeAsCaptured) ? filterCaptures(buf, n) : n;
+		long empty = ~occupied;
+		for (long pieces = own; pieces != 0; pieces &= pieces - 1){
+			int s = Long.numberOfTrailingZeros(pieces);
+			boolean king = (b.kings & (1L << s)) != 0;
+			for (int k = 0; k < 4; k++){
+				int d = Geometry.STEP_ORDER[k];
+				if (!king && ((d < 2) != p1))
+					continue;
+				if (king && flyingKings){
+					for (int to:geometry.ray[d][s]){
+						if ((empty & (1L << to)) == 0)
+							break;
+						buf[n++] = VariantBoard.encode(s, to, 0, false);
+					}
+					continue;
+				}
+				int to = geometry.neighbor[d][s];
+				if ((to >= 0) && ((empty & (1L << to)) != 0))
+					buf[n++] = VariantBoard.encode(s, to, 0, !king && ((crownRow & (1L << to)) != 0));
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Follows every capture sequence of one piece, writing each complete sequence.
+	 * @param from The square the piece started on
+	 * @param s The square it has reached
+	 * @param p1 True if P1 is capturing
+	 * @param wasKing True if it was a king before the move
+	 * @param king True if it captures as a king now
+	 * @param occupied Every piece on the board but the capturing one
+	 * @param opp Opposing pieces that may still be taken, with those already taken if they stay on the board
+	 * @param captured Pieces taken so far
+	 * @param crownRow The capturing side's crown row
+	 * @param buf The buffer to fill
+	 * @param n The number of moves in buf
+	 * @return The new number of moves in buf
+	 */
+	private int captures(int from, int s, boolean p1, boolean wasKing, boolean king, long occupied, long opp,
+			long captured, long crownRow, long[] buf, int n){
+		long capturable = opp & ~captured;
+		for (int d = 0; d < 4; d++){
+			if (!king && !menCaptureBackward && ((d < 2) != p1))
+				continue;
+			if (king && flyingKings){
+				int[] ray = geometry.ray[d][s];
+				int k = 0;
+				while ((k < ray.length) && ((occupied & (1L << ray[k])) == 0))
+					k++;
+				if ((k + 1 >= ray.length) || ((capturable & (1L << ray[k])) == 0))
+					continue;
+				for (int l = k + 1; (l < ray.length) && ((occupied & (1L << ray[l])) == 0); l++)
+					n = land(from, ray[l], ray[k], p1, wasKing, king, occupied, opp, captured, crownRow, buf, n);
+			}
+			else{
+				int over = geometry.neighbor[d][s];
+				int to = geometry.jump[d][s];
+				if ((to < 0) || ((capturable & (1L << over)) == 0) || ((occupied & (1L << to)) != 0))
+					continue;
+				n = land(from, to, over, p1, wasKing, king, occupied, opp, captured, crownRow, buf, n);
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Lands a capture on a square, then either captures on from there or, if no capture
+	 * follows, writes the move.
+	 * @param to The landing square
+	 * @param over The square of the piece taken
+	 * @return The new number of moves in buf
+	 */
+	private int land(int from, int to, int over, boolean p1, boolean wasKing, boolean king, long occupied, long opp,
+			long captured, long crownRow, long[] buf, int n){
+		long overBit = 1L << over;
+		boolean onCrownRow = !king && ((crownRow & (1L << to)) != 0);
+		boolean crowned = king || (crownMidCapture && onCrownRow);
+		int next = captures(from, to, p1, wasKing, crowned, removeAsCaptured ? occupied & ~overBit : occupied,
+				removeAsCaptured ? opp & ~overBit : opp, captured | overBit, crownRow, buf, n);
+		if (next == n)
+			buf[next++] = VariantBoard.encode(from, to, captured | overBit, !wasKing && (crowned || onCrownRow));
+		return next;
+	}
+
+	/**
+	 * Keeps only the captures the rules allow: those taking the most pieces under maximum
+	 * capture, each once.
+	 * @return The number of moves left in buf
+	 */
+	private int filterCaptures(long[] buf, int n){
+		int most = 0;
+		if (maximumCapture)
+			for (int k = 0; k < n; k++)
+				most = Math.max(most, Long.bitCount(VariantBoard.captured(buf[k])));
+		int kept = 0;
+		for (int k = 0; k < n; k++){
+			long m = buf[k];
+			if (Long.bitCount(VariantBoard.captured(m)) < most)
+				continue;
+			boolean seen = false;
+			for (int q = 0; (q < kept) && !seen; q++)
+				seen = buf[q] == m;
+			if (!seen)
+				buf[kept++] = m;
+		}
+		return kept;
+	}
+
+	/**
+	 * Generates the moves of an ENGLISH position with Board's bitboard generator.
+	 * @return The number of moves written
+	 */
+	private static int generateStandard(VariantBoard b, long[] buf){
+		int n = BoardManipulator.generate(b.packed(), buf, 0);
+		for (int k = 0; k < n; k++){
+			long m = buf[k];
+			buf[k] = VariantBoard.encode(Move.from(m), Move.to(m), Integer.toUnsignedLong(Move.captured(m)),
+					Move.isPromotion(m));
+		}
+		return n;
+	}
+}
@@ -0,0 +1,328 @@
+package Checkers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Counters of the search work done in a game, per move and over the whole game.
+ * <p>
+ * A GameSession with stats attached (see {@link GameSession#setStats(SearchStats)})
+ * counts the expansions it is asked for, those it refuses, the moves it generates and
+ * the successor Boards it allocates. Solvers add their own counts (nodes, cutoffs,
+ * transposition table probes and hits). The engine's searchers count everything, their
+ * expansions included, in plain fields and add their totals once per search, expanding
+ * through {@link GameSession#expandUncounted(Board, long[])} so the session does not
+ * count them again. Expansions made through the session's other methods, the moves they
+ * generate and the Boards they build go into plain per-thread counters that are summed
+ * when a move ends, so counting them costs no atomic operation. Without stats a session
+ * does no counting at all.
+ * <p>
+ * When a move is played the counters of that move are closed: they are added to the
+ * game totals, written as one JSON object per line to the output, if any, and committed
+ * as a JFR event, which is only recorded while a flight recording has
+ * "checkers.Move" enabled. The other counters are LongAdders, so several search threads
+ * can add to them at once.
+ * @author mhtong
+ *
+ */
+public class SearchStats {
+	/**Counter: expansions charged to the look budget*/
+	public static final int EXPANDS = 0;
+
+	/**Counter: expansions refused by the depth or look limit*/
+	public static final int REFUSED = 1;
+
+	/**Counter: moves generated by charged expansions*/
+	public static final int MOVES = 2;
+
+	/**Counter: successor Boards allocated for the Vector and iterator APIs*/
+	public static final int BOARDS = 3;
+
+	/**Counter: capture-only expansions for quiescence*/
+	public static final int CAPTURE_EXPANDS = 4;
+
+	/**Counter: nodes searched, as reported by the Solver*/
+	public static final int NODES = 5;
+
+	/**Counter: nodes that ended in a beta cutoff*/
+	public static final int CUTOFFS = 6;
+
+	/**Counter: transposition table probes*/
+	public static final int TT_PROBES = 7;
+
+	/**Counter: transposition table probes that found the position*/
+	public static final int TT_HITS = 8;
+
+	/**The number of counters*/
+	public static final int COUNTERS = 9;
+
+	/**Counter names, as used in the JSON output*/
+	private static final String[] NAMES = {"expands", "refused", "moves", "boards", "captureExpands", "nodes",
+			"cutoffs", "ttProbes", "ttHits"};
+
+	/**The counters of the move in progress*/
+	private final LongAdder[] current = new LongAdder[COUNTERS];
+
+	/**Each counting thread's expansion counts*/
+	private final ThreadLocal<Cell> cells = new ThreadLocal<Cell>(){
+		protected Cell initialValue(){
+			Cell c = new Cell();
+			synchronized (SearchStats.this){
+				allCells.add(c);
+			}
+			return c;
+		}
+	};
+
+	/**Every thread's Cell*/
+	private final List<Cell> allCells = new ArrayList<Cell>();
+
+	/**The counts of every Cell, summed when the last move ended*/
+	private final long[] cellBase = new long[COUNTERS];
+
+	/**The counters of every finished move*/
+	private final long[] totals = new long[COUNTERS];
+
+	/**Moves finished*/
+	private int plies;
+
+	/**Time spent on finished moves*/
+	private long totalNanos;
+
+	/**System.nanoTime() when the move in progress began*/
+	private long moveStart = System.nanoTime();
+
+	/**Receives a JSON line per move, or null*/
+	private Appendable output;
+
+	/**
+	 * One thread's running counts of expansions, moves generated and Boards built, indexed
+	 * by counter. Only the owning thread writes them, so they need no atomic updates;
+	 * endMove reads them once the move's search is over. A Successors iterator looks its
+	 * thread's Cell up once and counts into it directly.
+	 */
+	static final class Cell {
+		final long[] counts = new long[COUNTERS];
+	}
+
+	/**The JFR event committed for each move*/
+	@Name("checkers.Move")
+	@Label("Checkers Move")
+	@Category("Checkers")
+	@StackTrace(false)
+	static class MoveEvent extends Event {
+		@Label("Ply")
+		int ply;
+
+		@Label("Move Time")
+		@Timespan
+		long nanos;
+
+		@Label("Expansions")
+		long expands;
+
+		@Label("Refused Expansions")
+		long refused;
+
+		@Label("Moves Generated")
+		long moves;
+
+		@Label("Boards Allocated")
+		long boards;
+
+		@Label("Capture Expansions")
+		long captureExpands;
+
+		@Label("Nodes")
+		long nodes;
+
+		@Label("Cutoffs")
+		long cutoffs;
+
+		@Label("TT Probes")
+		long ttProbes;
+
+		@Label("TT Hits")
+		long ttHits;
+	}
+
+	/**
+	 * Creates a set of counters, all zero.
+	 */
+	public SearchStats(){
+		for (int c = 0; c < COUNTERS; c++)
+			current[c] = new LongAdder();
+	}
+
+	/**
+	 * Writes a JSON line for each move played from now on.
+	 * @param out Where to write, null to stop writing
+	 */
+	public synchronized void setOutput(Appendable out){
+		output = out;
+	}
+
+	/**
+	 * Counts one expansion of the move in progress, the moves it generated and the
+	 * successor Boards it built.
+	 * @param moves The number of moves generated
+	 * @param boards The number of Boards built
+	 */
+	public void expanded(int moves, int boards){
+		long[] counts = cells.get().counts;
+		counts[EXPANDS]++;
+		counts[MOVES] += moves;
+		counts[BOARDS] += boards;
+	}
+
+	/**
+	 * @return The calling thread's Cell
+	 */
+	Cell cell(){
+		return cells.get();
+	}
+
+	/**
+	 * Counts one event of the move in progress.
+	 * @param counter The counter, e.g. EXPANDS
+	 */
+	public void increment(int counter){
+		current[counter].increment();
+	}
+
+	/**
+	 * Adds to a counter of the move in progress.
+	 * @param counter The counter, e.g. NODES
+	 * @param n The amount to add
+	 */
+	public void add(int counter, long n){
+		if (n != 0)
+			current[counter].add(n);
+	}
+
+	/**
+	 * Gets a counter of the move in progress.
+	 * @param counter The counter
+	 * @return Its value so far this move
+	 */
+	public long get(int counter){
+		long cells;
+		synchronized (this){
+			cells = sumCells(counter) - cellBase[counter];
+		}
+		return current[counter].sum() + cells;
+	}
+
+	/**
+	 * Gets a counter over every finished move.
+	 * @param counter The counter
+	 * @return Its total
+	 */
+	public synchronized long getTotal(int counter){
+		return totals[counter];
+	}
+
+	/**
+	 * @return The number of moves finished
+	 */
+	public synchronized int getPlies(){
+		return plies;
+	}
+
+	/**
+	 * @return The time spent on finished moves, in nanoseconds
+	 */
+	public synchronized long getTotalNanos(){
+		return totalNanos;
+	}
+
+	/**
+	 * Closes the move in progress: adds its counters to the totals, reports them and
+	 * starts counting the next move from zero. GameSession.doMove calls this.
+	 */
+	public synchronized void endMove(){
+		long now = System.nanoTime();
+		long nanos = now - moveStart;
+		moveStart = now;
+		long[] move = new long[COUNTERS];
+		for (int c = 0; c < COUNTERS; c++){
+			long cells = sumCells(c);
+			move[c] = current[c].sumThenReset() + cells - cellBase[c];
+			cellBase[c] = cells;
+			totals[c] += move[c];
+		}
+		totalNanos += nanos;
+		plies++;
+		if (output != null){
+			try{
+				output.append(toJSON(plies, nanos, move)).append('\n');
+			}
+			catch (IOException e){
+				throw new UncheckedIOException(e);
+			}
+		}
+		MoveEvent e = new MoveEvent();
+		if (e.isEnabled()){
+			e.ply = plies;
+			e.nanos = nanos;
+			e.expands = move[EXPANDS];
+			e.refused = move[REFUSED];
+			e.moves = move[MOVES];
+			e.boards = move[BOARDS];
+			e.captureExpands = move[CAPTURE_EXPANDS];
+			e.nodes = move[NODES];
+			e.cutoffs = move[CUTOFFS];
+			e.ttProbes = move[TT_PROBES];
+			e.ttHits = move[TT_HITS];
+			e.commit();
+		}
+	}
+
+	/**
+	 * Sums one counter over every thread's Cell.
+	 * @param counter The counter
+	 * @return The running total since the stats were created
+	 */
+	private synchronized long sumCells(int counter){
+		long sum = 0;
+		for (Cell c:allCells)
+			sum += c.counts[counter];
+		return sum;
+	}
+
+	/**
+	 * @return The game totals as one JSON object
+	 */
+	public synchronized String totalsToJSON(){
+		return toJSON(plies, totalNanos, totals);
+	}
+
+	/**
+	 * Formats a set of counters with the rates derived from them: the branching factor
+	 * (moves per expansion), the cutoff rate (cutoffs per node) and the table hit rate.
+	 */
+	private static String toJSON(int ply, long nanos, long[] c){
+		StringBuilder sb = new StringBuilder(256);
+		sb.append("{\"ply\":").append(ply).append(",\"nanos\":").append(nanos);
+		for (int k = 0; k < COUNTERS; k++)
+			sb.append(",\"").append(NAMES[k]).append("\":").append(c[k]);
+		sb.append(String.format(Locale.ROOT, ",\"branching\":%.3f,\"cutoffRate\":%.4f,\"ttHitRate\":%.4f}",
+				ratio(c[MOVES], c[EXPANDS]), ratio(c[CUTOFFS], c[NODES]), ratio(c[TT_HITS], c[TT_PROBES])));
+		return sb.toString();
+	}
+
+	private static double ratio(long a, long b){
+		return (b == 0) ? 0 : (double)a / b;
+	}
+}
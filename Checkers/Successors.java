@@ -0,0 +1,141 @@
+package Checkers;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The successor states of a board, generated one at a time. See {@link Game#successors(Board)}.
+ * <p>
+ * The successors come in the same order as the Vector expand(Board) returns, so the k-th
+ * one has action index k. Moves are generated a piece at a time as the iteration reaches
+ * that piece, and a successor Board is only built when {@link #next()} asks for it, so a
+ * search that stops after the first few children pays for those alone. Whether the side
+ * to move must jump is settled before the first move, so, as in expand(Board), a board
+ * with a jump yields only jumps.
+ * <p>
+ * An instance can be iterated once, by the thread that created it. It keeps its own copy
+ * of the board, which may be changed once the iteration has begun, and room for one
+ * piece's moves. Moves are generated into the thread's scratch buffer and copied out, so
+ * iterators nested in a search share that buffer safely.
+ * @author mhtong
+ *
+ */
+public class Successors implements Iterator<Board>, Iterable<Board> {
+	/**The most simple moves one piece has: a king's four steps*/
+	private static final int PIECE_MOVES = 4;
+
+	/**The board expanded, packed*/
+	private final Board parent;
+
+	/**True if the side to move must jump*/
+	private final boolean jumping;
+
+	/**Pieces of the side to move not yet generated, as a bitboard*/
+	private int pieces;
+
+	/**The moves of the piece being generated, grown for a piece with more jumps than fit*/
+	private long[] buf = new long[PIECE_MOVES];
+
+	/**The creating thread's move buffer, which each piece's moves are generated into and copied out of*/
+	private final long[] scratch;
+
+	/**The next move to hand out, as an index into buf*/
+	private int next;
+
+	/**The number of moves in buf*/
+	private int count;
+
+	/**The action index of the move last handed out, -1 before the first*/
+	private int index = -1;
+
+	/**The creating thread's counts of generated moves and built Boards, or null*/
+	private final long[] counts;
+
+	/**
+	 * Starts an iteration over the successors of b. No limits are checked and nothing is
+	 * charged; GameSession.successors does that.
+	 * @param b The board to be expanded
+	 * @param stats Counters of the moves generated and Boards built, or null
+	 * @param scratch A buffer with room for {@link Move#MAX_MOVES} moves, used only inside hasNext
+	 */
+	protected Successors(Board b, SearchStats stats, long[] scratch){
+		parent = new Board(b.p1, b.p2, b.kings, b.hash);
+		parent.p1Turn = b.p1Turn;
+		parent.depth = b.depth;
+		jumping = Evaluation.hasCapture(b);
+		pieces = b.p1Turn ? b.p1 : b.p2;
+		counts = (stats == null) ? null : stats.cell().counts;
+		this.scratch = scratch;
+	}
+
+	/**
+	 * Returns this, so the successors can be visited with a for-each loop.
+	 */
+	public Iterator<Board> iterator(){
+		return this;
+	}
+
+	/**
+	 * Tells whether another successor remains, generating the moves of the next pieces if needed.
+	 */
+	public boolean hasNext(){
+		while ((next == count) && (pieces != 0)){
+			int s = Integer.numberOfTrailingZeros(pieces);
+			pieces &= pieces - 1;
+			next = 0;
+			count = BoardManipulator.pieceMoves(parent, s, jumping, scratch, 0);
+			if (count > buf.length)
+				buf = new long[count];
+			System.arraycopy(scratch, 0, buf, 0, count);
+			if (counts != null)
+				counts[SearchStats.MOVES] += count;
+		}
+		return next < count;
+	}
+
+	/**
+	 * Moves on to the next successor without building its Board.
+	 * @return The encoded move leading to it (see {@link Move})
+	 * @throws NoSuchElementException If no successor remains
+	 */
+	public long nextMove(){
+		if (!hasNext())
+			throw new NoSuchElementException();
+		index++;
+		return buf[next++];
+	}
+
+	/**
+	 * Builds the next successor.
+	 * @return The board after the next move
+	 * @throws NoSuchElementException If no successor remains
+	 */
+	public Board next(){
+		long m = nextMove();
+		Board b = new Board(parent.p1, parent.p2, parent.kings, parent.hash);
+		b.p1Turn = parent.p1Turn;
+		b.depth = parent.depth;
+		b.makeMove(m);
+		b.toArray();
+		if (counts != null)
+			counts[SearchStats.BOARDS]++;
+		return b;
+	}
+
+	/**
+	 * @return The action index of the successor last returned by next or nextMove, -1 before the first
+	 */
+	public int getIndex(){
+		return index;
+	}
+
+	/**
+	 * @return The encoded move of the successor last returned by next or nextMove
+	 * @throws IllegalStateException Before the first successor
+	 */
+	public long getMove(){
+		if (index < 0)
+			throw new IllegalStateException("No successor visited yet");
+		return buf[next - 1];
+	}
+}
@@ -0,0 +1,557 @@
+package Checkers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Endgame tablebases: the exact value of every position with few pieces, solved by
+ * retrograde analysis and kept in one file per piece count. Each position has a 16 bit
+ * entry holding a win, loss or draw for the side to move and, for wins and losses, the
+ * number of plies to the end of the game with best play.
+ * <p>
+ * The rules are those of BoardManipulator: jumps are mandatory, a side with no pieces
+ * has lost, and a side with pieces but no moves has drawn. Depth and look limits, which
+ * belong to a game and not a position, are ignored.
+ * <p>
+ * Files are read through MappedByteBuffers, so opening a set of tables costs no heap and
+ * the operating system pages in only the parts that are probed. A Tablebase can be
+ * probed by any number of threads at once.
+ * <p>
+ * Positions are indexed by the colex rank of the occupied squares, then the kind of
+ * each piece in square order (2 bits each, numbered as in Zobrist), then the side to move.
+ * Entries that no game can reach (men on their promotion row, a side to move whose
+ * opponent has no pieces) are 0, like positions the tables do not cover.
+ * <p>
+ * Usage: java Checkers.Tablebase [-dir directory] [-pos position] pieces
+ * @author mhtong
+ *
+ */
+public class Tablebase {
+	/**Entry value: the side to move wins*/
+	public static final int WIN = 1;
+
+	/**Entry value: the side to move loses*/
+	public static final int LOSS = 2;
+
+	/**Entry value: neither side can force a win*/
+	public static final int DRAW = 3;
+
+	/**The fewest pieces a table is built for; with one piece the game is over*/
+	public static final int MIN_PIECES = 2;
+
+	/**
+	 * The most pieces a table is built for. Five pieces take an 824MB file and about 12
+	 * minutes on one core; six would take a 14.8GB file.
+	 */
+	public static final int MAX_PIECES = 5;
+
+	/**File header: "CKTB"*/
+	private static final int MAGIC = 0x434B5442;
+
+	/**File format version*/
+	private static final int VERSION = 1;
+
+	/**Header length in bytes*/
+	private static final int HEADER = 16;
+
+	/**Entries per mapped chunk, as a power of two, so that a chunk stays under 2GB*/
+	private static final int CHUNK_BITS = 29;
+
+	/**C(n, k) for n, k up to 32*/
+	private static final long[][] BINOMIAL = new long[Board.SQUARES + 1][Board.SQUARES + 1];
+
+	static{
+		for (int n = 0; n <= Board.SQUARES; n++){
+			BINOMIAL[n][0] = 1;
+			for (int k = 1; k <= n; k++)
+				BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1] + BINOMIAL[n - 1][k];
+		}
+	}
+
+	/**The tables by piece count, null where there is none*/
+	private final Table[] tables = new Table[MAX_PIECES + 1];
+
+	/**The largest piece count with a table*/
+	private int pieces;
+
+	/**
+	 * Opens the tables for 2 up to the given number of pieces from a directory. Table n is
+	 * the file tb{n}.bin. Opening stops at the first missing file.
+	 * @param dir The directory holding the tables
+	 * @param maxPieces The largest piece count to open
+	 * @throws IOException If a table cannot be read or is not a table
+	 */
+	public Tablebase(File dir, int maxPieces) throws IOException{
+		for (int n = MIN_PIECES; n <= Math.min(maxPieces, MAX_PIECES); n++){
+			File f = file(dir, n);
+			if (!f.isFile())
+				break;
+			tables[n] = Table.open(f, n, false);
+			pieces = n;
+		}
+	}
+
+	/**
+	 * Gets the largest piece count the tables cover.
+	 * @return The piece count, 0 if no tables were found
+	 */
+	public int getPieces(){
+		return pieces;
+	}
+
+	/**
+	 * Tells whether the tables hold a board, i.e. whether it has few enough pieces.
+	 * @param b The board
+	 * @return true if probe will find b
+	 */
+	public boolean covers(Board b){
+		int n = Integer.bitCount(b.p1 | b.p2);
+		return (n >= MIN_PIECES) && (n <= pieces);
+	}
+
+	/**
+	 * Looks up a board.
+	 * @param b The board
+	 * @return The entry for b, to be read with value and distance, or 0 if the tables do not hold it
+	 */
+	public int probe(Board b){
+		int n = Integer.bitCount(b.p1 | b.p2);
+		if ((n < MIN_PIECES) || (n > pieces))
+			return 0;
+		return tables[n].get(index(b.p1, b.p2, b.kings, b.p1Turn));
+	}
+
+	/**
+	 * Gets the value of an entry.
+	 * @param entry An entry returned by probe
+	 * @return WIN, LOSS or DRAW for the side to move, 0 for an empty entry
+	 */
+	public static int value(int entry){
+		return entry & 3;
+	}
+
+	/**
+	 * Gets the distance of an entry.
+	 * @param entry An entry returned by probe
+	 * @return For a win or loss, the plies until the loser has no pieces or no moves with best play
+	 */
+	public static int distance(int entry){
+		return entry >>> 2;
+	}
+
+	/**
+	 * Gets the number of positions in the table for a piece count, reachable or not.
+	 * @param n The piece count
+	 * @return The number of entries in table n
+	 */
+	public static long size(int n){
+		return BINOMIAL[Board.SQUARES][n] << (2 * n + 1);
+	}
+
+	/**
+	 * Gets the index of a position in the table for its piece count.
+	 * @param p1 The squares holding P1's pieces
+	 * @param p2 The squares holding P2's pieces
+	 * @param kings The squares holding kings
+	 * @param p1Turn True if P1 is to move
+	 * @return The index
+	 */
+	public static long index(int p1, int p2, int kings, boolean p1Turn){
+		int occ = p1 | p2;
+		long rank = 0;
+		long kinds = 0;
+		int i = 0;
+		for (int rest = occ; rest != 0; rest &= rest - 1){
+			int s = Integer.numberOfTrailingZeros(rest);
+			int bit = 1 << s;
+			int kind = (((p2 & bit) != 0) ? Zobrist.P2_MAN : Zobrist.P1_MAN) + (((kings & bit) != 0) ? 1 : 0);
+			kinds |= (long)kind << (2 * i);
+			i++;
+			rank += BINOMIAL[s][i];
+		}
+		return (((rank << (2 * i)) | kinds) << 1) | (p1Turn ? 0 : 1);
+	}
+
+	/**
+	 * Gets the file holding a table.
+	 * @param dir The directory of the tables
+	 * @param n The piece count
+	 * @return The file
+	 */
+	public static File file(File dir, int n){
+		return new File(dir, "tb" + n + ".bin");
+	}
+
+	/**
+	 * Builds the tables for 2 up to the given number of pieces, writing them into dir.
+	 * Tables already present are reused rather than built again. Progress is printed to
+	 * System.out.
+	 * @param dir The directory to write the tables to
+	 * @param maxPieces The largest piece count to build
+	 * @throws IOException If a table cannot be written
+	 */
+	public static void generate(File dir, int maxPieces) throws IOException{
+		if ((maxPieces < MIN_PIECES) || (maxPieces > MAX_PIECES))
+			throw new IllegalArgumentException("Piece count must be " + MIN_PIECES + " to " + MAX_PIECES);
+		dir.mkdirs();
+		Table[] built = new Table[maxPieces + 1];
+		for (int n = MIN_PIECES; n <= maxPieces; n++){
+			File f = file(dir, n);
+			if (f.isFile()){
+				built[n] = Table.open(f, n, false);
+				continue;
+			}
+			long start = System.nanoTime();
+			File tmp = new File(dir, f.getName() + ".tmp");
+			built[n] = Table.open(tmp, n, true);
+			new Generator(built, n).run();
+			built[n].flush();
+			if (!tmp.renameTo(f))
+				throw new IOException("Cannot rename " + tmp + " to " + f);
+			System.out.println(String.format("tb%d: %.1fs", n, (System.nanoTime() - start) / 1e9));
+		}
+	}
+
+	/**
+	 * One table file, mapped in chunks.
+	 */
+	private static final class Table {
+		final int pieces;
+
+		final long size;
+
+		final MappedByteBuffer[] chunks;
+
+		private Table(int pieces, long size, MappedByteBuffer[] chunks){
+			this.pieces = pieces;
+			this.size = size;
+			this.chunks = chunks;
+		}
+
+		/**
+		 * Maps a table file.
+		 * @param f The file
+		 * @param n The piece count it is for
+		 * @param create True to create the file, zero filled, for writing
+		 * @return The table
+		 * @throws IOException If the file cannot be mapped or has the wrong header
+		 */
+		static Table open(File f, int n, boolean create) throws IOException{
+			long size = size(n);
+			try (RandomAccessFile raf = new RandomAccessFile(f, create ? "rw" : "r")){
+				FileChannel ch = raf.getChannel();
+				FileChannel.MapMode mode = create ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+				if (create){
+					raf.setLength(0);
+					raf.setLength(HEADER + size * 2);
+					raf.writeInt(MAGIC);
+					raf.writeInt(VERSION);
+					raf.writeInt(n);
+				}
+				else if ((raf.length() != HEADER + size * 2) || (raf.readInt() != MAGIC) ||
+						(raf.readInt() != VERSION) || (raf.readInt() != n))
+					throw new IOException(f + " is not a " + n + " piece table");
+				int count = (int)((size + (1L << CHUNK_BITS) - 1) >>> CHUNK_BITS);
+				MappedByteBuffer[] chunks = new MappedByteBuffer[count];
+				for (int c = 0; c < count; c++){
+					long first = (long)c << CHUNK_BITS;
+					long entries = Math.min(size - first, 1L << CHUNK_BITS);
+					chunks[c] = ch.map(mode, HEADER + first * 2, entries * 2);
+				}
+				return new Table(n, size, chunks);
+			}
+		}
+
+		int get(long i){
+			return chunks[(int)(i >>> CHUNK_BITS)].getShort((int)(i & ((1 << CHUNK_BITS) - 1)) << 1) & 0xFFFF;
+		}
+
+		void put(long i, int entry){
+			chunks[(int)(i >>> CHUNK_BITS)].putShort((int)(i & ((1 << CHUNK_BITS) - 1)) << 1, (short)entry);
+		}
+
+		void flush(){
+			for (MappedByteBuffer m:chunks)
+				m.force();
+		}
+	}
+
+	/**
+	 * Solves one table by retrograde analysis.
+	 * <p>
+	 * Jumps are mandatory, so a position has either only captures, which all lead into the
+	 * smaller tables, or only simple moves, which all stay in this one. The first scan
+	 * resolves every position of the first kind straight from the smaller tables, and
+	 * stores in the entry of each position of the second kind the number of its moves not
+	 * yet known to lead to a win. Pass d then takes every position resolved at distance d
+	 * and unmakes each simple move that can lead to it: the position before a move to a
+	 * loss is a win in d+1, and a position whose last remaining move leads to a win is a
+	 * loss in d+1. So each position has its moves generated once, rather than once per
+	 * pass. Positions still unresolved when no pass finds more are draws.
+	 */
+	private static final class Generator {
+		final Table[] tables;
+
+		final Table table;
+
+		final int n;
+
+		/**Unresolved positions, one bit each*/
+		final long[] pending;
+
+		final Board board = new Board(0, 0, 0, 0);
+
+		final long[] moves = new long[Move.MAX_MOVES];
+
+		long wins, losses, draws;
+
+		/**The longest win or loss resolved so far*/
+		int longest;
+
+		Generator(Table[] tables, int n){
+			this.tables = tables;
+			this.table = tables[n];
+			this.n = n;
+			pending = new long[Math.toIntExact((table.size + 63) >>> 6)];
+		}
+
+		/**
+		 * @return The longest win or loss found
+		 */
+		int run(){
+			long left = 0;
+			for (long idx = 0, occ = (1L << n) - 1; occ < (1L << Board.SQUARES); occ = nextCombination(occ))
+				for (int kinds = 0; kinds < (1 << (2 * n)); kinds++)
+					for (int side = 0; side < 2; side++, idx++)
+						if (start(idx, (int)occ, kinds, side == 0)){
+							pending[(int)(idx >>> 6)] |= 1L << idx;
+							left++;
+						}
+			for (int d = 0; (d <= longest) && (left > 0); d++){
+				for (long idx = 0; idx < table.size; idx++){
+					int e = table.get(idx);
+					if (((value(e) == WIN) || (value(e) == LOSS)) && (distance(e) == d))
+						left -= propagate(idx, value(e), d);
+				}
+			}
+			for (int w = 0; w < pending.length; w++)
+				for (long bits = pending[w]; bits != 0; bits &= bits - 1)
+					table.put(((long)w << 6) | Long.numberOfTrailingZeros(bits), DRAW);
+			draws += left;
+			System.out.println(String.format("tb%d: %d wins, %d losses, %d draws, longest %d plies",
+					n, wins, losses, draws, longest));
+			return longest;
+		}
+
+		/**
+		 * Sets the board to a position.
+		 * @return false if the position cannot arise in a game
+		 */
+		private boolean decode(int occ, int kinds, boolean p1Turn){
+			int p1 = 0, p2 = 0, kings = 0;
+			int i = 0;
+			for (int rest = occ; rest != 0; rest &= rest - 1, i++){
+				int bit = rest & -rest;
+				int kind = (kinds >>> (2 * i)) & 3;
+				if (kind >= Zobrist.P2_MAN)
+					p2 |= bit;
+				else
+					p1 |= bit;
+				if ((kind & 1) != 0)
+					kings |= bit;
+			}
+			if (((p1 & ~kings & Board.P1_KING_ROW) != 0) || ((p2 & ~kings & Board.P2_KING_ROW) != 0))
+				return false;
+			if ((p1Turn ? p2 : p1) == 0)
+				return false;
+			board.p1 = p1;
+			board.p2 = p2;
+			board.kings = kings;
+			board.p1Turn = p1Turn;
+			board.board = null;
+			return true;
+		}
+
+		/**
+		 * Writes the entries that need no retrograde pass: losses with no pieces, draws with
+		 * no moves, and positions whose captures lead into the smaller tables. Leaves the
+		 * number of moves in the entry of any other position.
+		 * @return true if the position is left unresolved
+		 */
+		private boolean start(long idx, int occ, int kinds, boolean p1Turn){
+			if (!decode(occ, kinds, p1Turn))
+				return false;
+			if ((p1Turn ? board.p1 : board.p2) == 0){
+				table.put(idx, LOSS);
+				losses++;
+				return false;
+			}
+			int count = BoardManipulator.generate(board, moves, 0);
+			if (count == 0){
+				table.put(idx, DRAW);
+				draws++;
+				return false;
+			}
+			if (!Move.isCapture(moves[0])){
+				table.put(idx, count << 2);
+				return true;
+			}
+			int win = Integer.MAX_VALUE, loss = 0;
+			boolean draw = false;
+			for (int i = 0; i < count; i++){
+				long m = moves[i];
+				int undo = board.makeMove(m);
+				int e = LOSS;
+				if ((board.p1Turn ? board.p1 : board.p2) != 0)
+					e = tables[Integer.bitCount(board.p1 | board.p2)].get(index(board.p1, board.p2, board.kings, board.p1Turn));
+				board.unmakeMove(m, undo);
+				if (value(e) == LOSS)
+					win = Math.min(win, distance(e) + 1);
+				else if (value(e) == WIN)
+					loss = Math.max(loss, distance(e) + 1);
+				else
+					draw = true;
+			}
+			if (win != Integer.MAX_VALUE)
+				resolve(idx, WIN, win);
+			else if (draw){
+				table.put(idx, DRAW);
+				draws++;
+			}
+			else
+				resolve(idx, LOSS, loss);
+			return false;
+		}
+
+		/**
+		 * Passes a result on to the unresolved positions one simple move before it.
+		 * @param idx A position resolved in distance d
+		 * @param v Its value, WIN or LOSS
+		 * @param d Its distance
+		 * @return The number of positions resolved
+		 */
+		private int propagate(long idx, int v, int d){
+			decode(unrank(idx >>> (2 * n + 1), n), (int)(idx >>> 1) & ((1 << (2 * n)) - 1), (idx & 1) == 0);
+			boolean moverP1 = !board.p1Turn;
+			int p1 = board.p1, p2 = board.p2, kings = board.kings;
+			int empty = ~(p1 | p2);
+			int crownRow = moverP1 ? Board.P1_KING_ROW : Board.P2_KING_ROW;
+			int found = 0;
+			for (int rest = moverP1 ? p1 : p2; rest != 0; rest &= rest - 1){
+				int t = Integer.numberOfTrailingZeros(rest);
+				int tBit = 1 << t;
+				boolean king = (kings & tBit) != 0;
+				for (int d2 = 0; d2 < 4; d2++){
+					int f = Board.NEIGHBOR[d2][t];
+					if ((f < 0) || ((empty & (1 << f)) == 0))
+						continue;
+					int moved = tBit | (1 << f);
+					int q1 = moverP1 ? p1 ^ moved : p1;
+					int q2 = moverP1 ? p2 : p2 ^ moved;
+					if (king)
+						found += predecessor(index(q1, q2, (kings & ~tBit) | (1 << f), moverP1), v, d);
+					boolean forward = ((d2 ^ 3) < 2) == moverP1;
+					if (forward && (!king || ((crownRow & tBit) != 0)))
+						found += predecessor(index(q1, q2, kings & ~tBit, moverP1), v, d);
+				}
+			}
+			return found;
+		}
+
+		/**
+		 * Counts one move from an unresolved position to a position resolved in distance d.
+		 * @param idx The position before the move
+		 * @param v The value of the position after it, for its side to move
+		 * @param d The distance of the position after it
+		 * @return 1 if the position before is now resolved, 0 otherwise
+		 */
+		private int predecessor(long idx, int v, int d){
+			long bit = 1L << idx;
+			if ((pending[(int)(idx >>> 6)] & bit) == 0)
+				return 0;
+			if (v == WIN){
+				int remaining = distance(table.get(idx)) - 1;
+				if (remaining > 0){
+					table.put(idx, remaining << 2);
+					return 0;
+				}
+			}
+			pending[(int)(idx >>> 6)] &= ~bit;
+			resolve(idx, (v == LOSS) ? WIN : LOSS, d + 1);
+			return 1;
+		}
+
+		/**
+		 * Writes a win or loss.
+		 */
+		private void resolve(long idx, int v, int d){
+			table.put(idx, v | (d << 2));
+			if (v == WIN)
+				wins++;
+			else
+				losses++;
+			longest = Math.max(longest, d);
+		}
+	}
+
+	/**
+	 * Gets the square set with a given colex rank.
+	 * @param rank The rank
+	 * @param n The number of squares in the set
+	 * @return The squares as a bit mask
+	 */
+	private static int unrank(long rank, int n){
+		int occ = 0;
+		int s = Board.SQUARES;
+		for (int i = n; i > 0; i--){
+			do
+				s--;
+			while (BINOMIAL[s][i] > rank);
+			rank -= BINOMIAL[s][i];
+			occ |= 1 << s;
+		}
+		return occ;
+	}
+
+	/**
+	 * Gets the next larger int with the same number of bits set (Gosper's hack), which
+	 * steps through the square sets in colex order.
+	 */
+	private static long nextCombination(long x){
+		long c = x & -x;
+		long r = x + c;
+		return (((r ^ x) >>> 2) / c) | r;
+	}
+
+	public static void main(String args[]) throws IOException{
+		File dir = new File("tablebase");
+		Board b = null;
+		int n = -1;
+		for (int a = 0; a < args.length; a++){
+			if (args[a].equals("-dir"))
+				dir = new File(args[++a]);
+			else if (args[a].equals("-pos"))
+				b = Perft.parse(args[++a]);
+			else
+				n = Integer.parseInt(args[a]);
+		}
+		if (n < MIN_PIECES){
+			System.out.println("Usage: java Checkers.Tablebase [-dir directory] [-pos position] pieces");
+			return;
+		}
+		if (b == null){
+			generate(dir, n);
+			return;
+		}
+		Tablebase tb = new Tablebase(dir, n);
+		int e = tb.probe(b);
+		if (e == 0)
+			System.out.println("not in the tables");
+		else
+			System.out.println(new String[]{"", "win", "loss", "draw"}[value(e)] +
+					((value(e) == DRAW) ? "" : " in " + distance(e) + " plies"));
+	}
+}
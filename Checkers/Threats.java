@@ -0,0 +1,141 @@
+package Checkers;
+
+/**
+ * Attack maps: which pieces a side could capture if it were to move, read straight from
+ * the bit masks of a board without building successor Boards or allocating.
+ * <p>
+ * {@link #mask(Board, boolean)} gives every capturable square as one bit mask.
+ * {@link #sequences(Board, boolean, long[])} lists each complete jump sequence, in the
+ * same order as the jump moves of Game.expand, as a packed long: the number of pieces
+ * taken in the low 4 bits, then the square of each captured piece, in the order it is
+ * jumped, 5 bits apiece. A sequence takes at most 12 pieces, so it always fits.
+ * <p>
+ * The attacker need not be the side to move, so an evaluator can ask both which pieces
+ * it threatens and which of its own are threatened.
+ * @author mhtong
+ *
+ */
+public final class Threats {
+	private Threats(){
+	}
+
+	/**
+	 * Gets the squares a side could capture in one turn, counting every piece taken
+	 * anywhere in a multi-jump.
+	 * @param b The board
+	 * @param p1 True for the squares P1 could capture, false for P2
+	 * @return A bit mask of the threatened squares, 0 if that side has no jump
+	 */
+	public static int mask(Board b, boolean p1){
+		int own = p1 ? b.p1 : b.p2;
+		int opp = p1 ? b.p2 : b.p1;
+		int occupied = b.p1 | b.p2;
+		int threatened = 0;
+		for (int pieces = own; pieces != 0; pieces &= pieces - 1){
+			int s = Integer.numberOfTrailingZeros(pieces);
+			boolean king = (b.kings & (1 << s)) != 0;
+			threatened |= reach(s, p1, king, occupied, opp);
+		}
+		return threatened;
+	}
+
+	/**
+	 * Lists a side's jump sequences.
+	 * @param b The board
+	 * @param p1 True for P1's sequences, false for P2's
+	 * @param out Receives the packed sequences, with room for {@link Move#MAX_MOVES}
+	 * @return The number of sequences written, 0 if that side has no jump
+	 */
+	public static int sequences(Board b, boolean p1, long[] out){
+		int own = p1 ? b.p1 : b.p2;
+		int opp = p1 ? b.p2 : b.p1;
+		int occupied = b.p1 | b.p2;
+		int n = 0;
+		for (int pieces = own; pieces != 0; pieces &= pieces - 1){
+			int s = Integer.numberOfTrailingZeros(pieces);
+			boolean king = (b.kings & (1 << s)) != 0;
+			n = follow(s, p1, king, occupied, opp, 0, out, n);
+		}
+		return n;
+	}
+
+	/**
+	 * @param seq A packed sequence
+	 * @return The number of pieces it captures
+	 */
+	public static int count(long seq){
+		return (int)(seq & 15);
+	}
+
+	/**
+	 * @param seq A packed sequence
+	 * @param k Which capture, from 0
+	 * @return The square of the k-th piece captured
+	 */
+	public static int square(long seq, int k){
+		return (int)(seq >>> (4 + 5 * k)) & 31;
+	}
+
+	/**
+	 * @param seq A packed sequence
+	 * @return A bit mask of the squares it captures
+	 */
+	public static int captured(long seq){
+		int mask = 0;
+		for (int k = count(seq) - 1; k >= 0; k--)
+			mask |= 1 << square(seq, k);
+		return mask;
+	}
+
+	/**
+	 * Follows every jump sequence of the piece on s like BoardManipulator.generate does,
+	 * writing one packed sequence per complete sequence.
+	 * @param s The square the jumping piece is on now
+	 * @param p1 True if the jumping piece is P1's
+	 * @param king True if the piece is a king now
+	 * @param occupied Bitboard of all pieces at this point of the sequence
+	 * @param opp Bitboard of the opponent's remaining pieces
+	 * @param seq The captures so far, packed
+	 * @param out The sequence buffer
+	 * @param n The next free index of out
+	 * @return The next free index of out
+	 */
+	private static int follow(int s, boolean p1, boolean king, int occupied, int opp, long seq, long[] out, int n){
+		int first = (p1 || king) ? 0 : 2;
+		int last = (!p1 || king) ? 4 : 2;
+		for (int d = first; d < last; d++){
+			int over = Board.NEIGHBOR[d][s];
+			int to = Board.JUMP[d][s];
+			if ((to < 0) || ((opp & (1 << over)) == 0) || ((occupied & (1 << to)) != 0))
+				continue;
+			int overBit = 1 << over;
+			boolean crowned = king || (((1 << to) & (p1 ? Board.P1_KING_ROW : Board.P2_KING_ROW)) != 0);
+			long next = (seq + 1) | ((long)over << (4 + 5 * count(seq)));
+			int m = follow(to, p1, crowned, (occupied & ~overBit & ~(1 << s)) | (1 << to), opp & ~overBit, next, out, n);
+			if (m == n)
+				out[m++] = next;
+			n = m;
+		}
+		return n;
+	}
+
+	/**
+	 * Gets the squares the piece on s could capture in any sequence.
+	 * @return A bit mask of the capturable squares
+	 */
+	private static int reach(int s, boolean p1, boolean king, int occupied, int opp){
+		int first = (p1 || king) ? 0 : 2;
+		int last = (!p1 || king) ? 4 : 2;
+		int mask = 0;
+		for (int d = first; d < last; d++){
+			int over = Board.NEIGHBOR[d][s];
+			int to = Board.JUMP[d][s];
+			if ((to < 0) || ((opp & (1 << over)) == 0) || ((occupied & (1 << to)) != 0))
+				continue;
+			int overBit = 1 << over;
+			boolean crowned = king || (((1 << to) & (p1 ? Board.P1_KING_ROW : Board.P2_KING_ROW)) != 0);
+			mask |= overBit | reach(to, p1, crowned, (occupied & ~overBit & ~(1 << s)) | (1 << to), opp & ~overBit);
+		}
+		return mask;
+	}
+}
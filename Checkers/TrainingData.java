@@ -0,0 +1,264 @@
+package Checkers;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Training positions for evaluation tuning: positions from finished games, each labelled
+ * with how its game ended.
+ * <p>
+ * A file is a 16-byte header ("CKTD", a version, two reserved ints) followed by 16-byte
+ * records: P1's pieces, P2's pieces and the kings as bitboards, the side to move, the
+ * game's result for P1 (1, 0 or -1) and the ply the position was reached at. Games are
+ * appended by a {@link Writer} as they finish, and a {@link Reader} streams the records
+ * back a chunk at a time, so files can be far larger than memory.
+ * @author mhtong
+ *
+ */
+public final class TrainingData {
+	/**File header: "CKTD"*/
+	private static final int MAGIC = 0x434B5444;
+
+	/**File format version*/
+	private static final int VERSION = 1;
+
+	/**Header length in bytes*/
+	private static final int HEADER = 16;
+
+	/**Record length in bytes*/
+	public static final int RECORD = 16;
+
+	private TrainingData(){
+	}
+
+	/**
+	 * Appends the positions of finished games to a new file. addGame may be called from
+	 * several threads.
+	 */
+	public static class Writer implements Closeable {
+		/**The file being written*/
+		private final DataOutputStream out;
+
+		/**Plies at the start of each game that are left out*/
+		private final int skipPlies;
+
+		/**Positions written*/
+		private long positions;
+
+		/**Games added*/
+		private int games;
+
+		/**
+		 * Creates a file, replacing any file of that name.
+		 * @param f The file
+		 * @param skipPlies The plies at the start of each game to leave out, which are
+		 * mostly random opening moves and shared by many games
+		 * @throws IOException If the file cannot be created
+		 */
+		public Writer(File f, int skipPlies) throws IOException{
+			this.skipPlies = skipPlies;
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1 << 16));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(0);
+			out.writeInt(0);
+		}
+
+		/**
+		 * Adds a game played from the start position. Only quiet positions (no capture
+		 * pending for the side to move) are written: a static evaluation cannot see how a
+		 * pending exchange ends, so those positions would only add noise. The moves are
+		 * replayed without a GameSession, so they cost no looks.
+		 * @param actions The action index chosen at each ply
+		 * @param result 1 if P1 won, -1 if P2 won, 0 for a tie
+		 * @throws IOException If the file cannot be written
+		 */
+		public void addGame(int[] actions, int result) throws IOException{
+			Board b = new Board();
+			long[] moves = new long[Move.MAX_MOVES];
+			int[] rows = new int[actions.length * 4];
+			int n = 0;
+			for (int ply = 0; ply < actions.length; ply++){
+				int count = BoardManipulator.generate(b, moves, 0);
+				if ((actions[ply] < 0) || (actions[ply] >= count))
+					break;
+				if ((ply >= skipPlies) && !Evaluation.hasCapture(b)){
+					rows[n++] = b.p1;
+					rows[n++] = b.p2;
+					rows[n++] = b.kings;
+					rows[n++] = (b.p1Turn ? 1 : 0) | ((result & 0xFF) << 8) | (ply << 16);
+				}
+				b.makeMove(moves[actions[ply]]);
+			}
+			synchronized (this){
+				for (int k = 0; k < n; k++)
+					out.writeInt(rows[k]);
+				positions += n / 4;
+				games++;
+			}
+		}
+
+		/**
+		 * @return The number of positions written
+		 */
+		public synchronized long getPositions(){
+			return positions;
+		}
+
+		/**
+		 * @return The number of games added
+		 */
+		public synchronized int getGames(){
+			return games;
+		}
+
+		public synchronized void close() throws IOException{
+			out.close();
+		}
+	}
+
+	/**
+	 * A block of records in unpacked form.
+	 */
+	public static class Chunk {
+		/**The number of records held*/
+		public int size;
+
+		/**P1's pieces of each record*/
+		public final int[] p1;
+
+		/**P2's pieces of each record*/
+		public final int[] p2;
+
+		/**The kings of each record*/
+		public final int[] kings;
+
+		/**The side to move of each record*/
+		public final boolean[] p1Turn;
+
+		/**The game result for P1 of each record: 1, 0 or -1*/
+		public final byte[] result;
+
+		/**The ply of each record*/
+		public final short[] ply;
+
+		/**
+		 * Creates an empty chunk.
+		 * @param capacity The most records it can hold
+		 */
+		public Chunk(int capacity){
+			p1 = new int[capacity];
+			p2 = new int[capacity];
+			kings = new int[capacity];
+			p1Turn = new boolean[capacity];
+			result = new byte[capacity];
+			ply = new short[capacity];
+		}
+
+		/**
+		 * @return The most records the chunk can hold
+		 */
+		public int capacity(){
+			return p1.length;
+		}
+
+		/**
+		 * Builds the board of a record.
+		 * @param k The record, from 0 to size-1
+		 * @return A new packed Board
+		 */
+		public Board board(int k){
+			Board b = new Board(p1[k], p2[k], kings[k], Zobrist.hash(p1[k], p2[k], kings[k]));
+			b.p1Turn = p1Turn[k];
+			b.depth = ply[k];
+			return b;
+		}
+	}
+
+	/**
+	 * Streams the records of a file in chunks.
+	 */
+	public static class Reader implements Closeable {
+		/**The file*/
+		private final RandomAccessFile file;
+
+		/**Its channel*/
+		private final FileChannel channel;
+
+		/**The number of records in the file*/
+		private final long size;
+
+		/**The bytes of one chunk*/
+		private ByteBuffer buffer;
+
+		/**
+		 * Opens a file.
+		 * @param f The file, as written by Writer
+		 * @throws IOException If the file cannot be read or is not training data
+		 */
+		public Reader(File f) throws IOException{
+			file = new RandomAccessFile(f, "r");
+			if ((file.length() < HEADER) || (file.readInt() != MAGIC) || (file.readInt() != VERSION)){
+				file.close();
+				throw new IOException(f + " is not a training file");
+			}
+			size = (file.length() - HEADER) / RECORD;
+			channel = file.getChannel();
+			rewind();
+		}
+
+		/**
+		 * @return The number of records in the file
+		 */
+		public long size(){
+			return size;
+		}
+
+		/**
+		 * Goes back to the first record.
+		 * @throws IOException If the file cannot be read
+		 */
+		public void rewind() throws IOException{
+			channel.position(HEADER);
+		}
+
+		/**
+		 * Reads the next records.
+		 * @param c The chunk to fill, up to its capacity
+		 * @return The number of records read, 0 at the end of the file
+		 * @throws IOException If the file cannot be read
+		 */
+		public int next(Chunk c) throws IOException{
+			int bytes = c.capacity() * RECORD;
+			if ((buffer == null) || (buffer.capacity() < bytes))
+				buffer = ByteBuffer.allocateDirect(bytes);
+			buffer.clear().limit(bytes);
+			while (buffer.hasRemaining() && (channel.read(buffer) >= 0))
+				;
+			buffer.flip();
+			int n = buffer.remaining() / RECORD;
+			for (int k = 0; k < n; k++){
+				c.p1[k] = buffer.getInt();
+				c.p2[k] = buffer.getInt();
+				c.kings[k] = buffer.getInt();
+				int info = buffer.getInt();
+				c.p1Turn[k] = (info & 1) != 0;
+				c.result[k] = (byte)(info >> 8);
+				c.ply[k] = (short)(info >>> 16);
+			}
+			c.size = n;
+			return n;
+		}
+
+		public void close() throws IOException{
+			file.close();
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package Checkers;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size transposition table for Solvers, keyed by {@link Board#getHash()}. Entries
+ * live in a single long[] (no per-entry objects) as two-slot buckets: the first slot keeps
+ * the deepest result seen (depth-preferred), the second takes whatever it displaces or
+ * anything too shallow to displace it.
+ * <p>
+ * Probes and stores take no locks and may be made from any number of search threads at
+ * once. Each slot stores key^data next to data, so a slot torn by two racing stores no
+ * longer matches its key and simply reads as a miss.
+ * <p>
+ * Probes return the entry packed into a long, or 0 on a miss; use the static accessors
+ * to unpack it.
+ * @author mhtong
+ *
+ */
+public class TranspositionTable {
+	/**Bound type: the score is exact*/
+	public static final int EXACT = 1;
+
+	/**Bound type: the score is a lower bound (the search failed high)*/
+	public static final int LOWER = 2;
+
+	/**Bound type: the score is an upper bound (the search failed low)*/
+	public static final int UPPER = 3;
+
+	/**Two longs per slot, two slots per bucket*/
+	private static final int BUCKET_LONGS = 4;
+
+	/**The table. Slot k is table[2k] = key ^ data, table[2k+1] = data.*/
+	private final long[] table;
+
+	/**Bucket count minus one, for masking the hash*/
+	private final int mask;
+
+	/**Search generation, stored with each entry so stale depth-preferred entries can be replaced*/
+	private volatile int age;
+
+	private final LongAdder probes = new LongAdder();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder stores = new LongAdder();
+
+	/**
+	 * Creates a table of about the given size.
+	 * @param megabytes The memory to use, rounded down to a power of two number of buckets
+	 */
+	public TranspositionTable(int megabytes){
+		long buckets = Math.max(1, ((long)megabytes << 20) / (BUCKET_LONGS * 8));
+		int n = Integer.highestOneBit((int)Math.min(buckets, 1 << 28));
+		table = new long[n * BUCKET_LONGS];
+		mask = n - 1;
+	}
+
+	/**
+	 * Looks up a position.
+	 * @param key The position hash
+	 * @return The packed entry, or 0 if the position is not in the table
+	 */
+	public long probe(long key){
+		probes.increment();
+		int b = ((int)key & mask) * BUCKET_LONGS;
+		for (int k = b; k < b + BUCKET_LONGS; k += 2){
+			long data = table[k + 1];
+			if ((data != 0) && ((table[k] ^ data) == key)){
+				hits.increment();
+				return data;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Records a search result.
+	 * @param key The position hash
+	 * @param depth The remaining depth the position was searched to (0-255)
+	 * @param bound EXACT, LOWER or UPPER
+	 * @param score The score from the point of view of the side to move
+	 * @param move The index of the best move found, or -1 if none
+	 */
+	public void store(long key, int depth, int bound, int score, int move){
+		stores.increment();
+		long data = pack(depth, bound, score, move, age);
+		int b = ((int)key & mask) * BUCKET_LONGS;
+		long old = table[b + 1];
+		if ((old == 0) || ((table[b] ^ old) == key) ||
+				(depth >= depth(old)) || (age(old) != age)){
+			if ((old != 0) && ((table[b] ^ old) != key)){
+				table[b + 3] = old;
+				table[b + 2] = table[b];
+			}
+			table[b + 1] = data;
+			table[b] = key ^ data;
+		}
+		else{
+			table[b + 3] = data;
+			table[b + 2] = key ^ data;
+		}
+	}
+
+	/**
+	 * Starts a new search generation. Entries from older searches lose their protection
+	 * in the depth-preferred slots.
+	 */
+	public void newSearch(){
+		age = (age + 1) & 0xFF;
+	}
+
+	/**
+	 * Empties the table and its counters.
+	 */
+	public void clear(){
+		Arrays.fill(table, 0);
+		probes.reset();
+		hits.reset();
+		stores.reset();
+	}
+
+	/**
+	 * @return The number of probes made since the table was created or cleared
+	 */
+	public long getProbes(){
+		return probes.sum();
+	}
+
+	/**
+	 * @return The number of probes that found their position
+	 */
+	public long getHits(){
+		return hits.sum();
+	}
+
+	/**
+	 * @return The number of stores made
+	 */
+	public long getStores(){
+		return stores.sum();
+	}
+
+	/**
+	 * @return The fraction of probes that hit, 0 if there have been none
+	 */
+	public double getHitRate(){
+		long p = probes.sum();
+		return (p == 0) ? 0 : (double)hits.sum() / p;
+	}
+
+	/**
+	 * Packs an entry. The bound is never 0, so a valid entry is never 0.
+	 */
+	private static long pack(int depth, int bound, int score, int move, int age){
+		return (score & 0xFFFFFFFFL) |
+				((long)(depth & 0xFF) << 32) |
+				((long)bound << 40) |
+				((long)((move + 1) & 0x1FF) << 42) |
+				((long)age << 51);
+	}
+
+	/**
+	 * @param entry A packed entry returned by probe
+	 * @return The stored score
+	 */
+	public static int score(long entry){
+		return (int)entry;
+	}
+
+	/**
+	 * @param entry A packed entry returned by probe
+	 * @return The remaining depth the stored score was searched to
+	 */
+	public static int depth(long entry){
+		return (int)(entry >>> 32) & 0xFF;
+	}
+
+	/**
+	 * @param entry A packed entry returned by probe
+	 * @return EXACT, LOWER or UPPER
+	 */
+	public static int bound(long entry){
+		return (int)(entry >>> 40) & 3;
+	}
+
+	/**
+	 * @param entry A packed entry returned by probe
+	 * @return The index of the stored best move, -1 if none
+	 */
+	public static int move(long entry){
+		return ((int)(entry >>> 42) & 0x1FF) - 1;
+	}
+
+	private static int age(long entry){
+		return (int)(entry >>> 51) & 0xFF;
+	}
+}
@@ -0,0 +1,282 @@
+package Checkers;
+
+/**
+ * A position of a game played under any {@link Rules}, on a board of up to 10x10.
+ * <p>
+ * Like Board, the position is three bitboards, here longs over the squares of the
+ * rules' {@link Geometry}. Moves are encoded in a long as from (bits 0-5), to (bits
+ * 6-11), a promotion flag (bit 12) and the mask of captured squares (bits 13 and up),
+ * are generated by {@link Rules#generate(VariantBoard, long[])} and are played in place
+ * with makeMove and unmakeMove.
+ * <p>
+ * The Game API and the Solvers stay on Board; this class is for analysing and playing
+ * the other variants.
+ * @author mhtong
+ *
+ */
+public class VariantBoard {
+	/**Room to leave in a move buffer*/
+	public static final int MAX_MOVES = 1024;
+
+	private static final int TO_SHIFT = 6;
+
+	private static final long PROMOTION = 1L << 12;
+
+	private static final int CAPTURED_SHIFT = 13;
+
+	/**The rules the game is played under*/
+	protected final Rules rules;
+
+	/**True if P1's turn, false if P2's*/
+	public boolean p1Turn;
+
+	/**The number of moves to reach this state*/
+	protected int depth;
+
+	/**Bitboard of P1's pieces (men and kings)*/
+	protected long p1;
+
+	/**Bitboard of P2's pieces (men and kings)*/
+	protected long p2;
+
+	/**Bitboard of kings of either colour*/
+	protected long kings;
+
+	/**A Board to hand to the 8x8 generator, built on first use*/
+	private Board packed;
+
+	/**
+	 * Creates the starting position of a game.
+	 * @param rules The rules to play under
+	 */
+	public VariantBoard(Rules rules){
+		this.rules = rules;
+		Geometry g = rules.getGeometry();
+		int size = g.getSize();
+		for (int s = 0; s < g.getSquares(); s++){
+			int j = g.squareCol(s);
+			if (j < rules.getStartRows())
+				p1 |= 1L << s;
+			else if (j >= size - rules.getStartRows())
+				p2 |= 1L << s;
+		}
+		p1Turn = true;
+	}
+
+	/**
+	 * Creates a copy of another position.
+	 * @param b The position to copy
+	 */
+	public VariantBoard(VariantBoard b){
+		rules = b.rules;
+		p1 = b.p1;
+		p2 = b.p2;
+		kings = b.kings;
+		p1Turn = b.p1Turn;
+		depth = b.depth;
+	}
+
+	/**
+	 * Encodes a move.
+	 * @param from The square the piece starts on
+	 * @param to The square it ends on
+	 * @param captured The squares of the pieces it takes
+	 * @param promotion True if a man is crowned by the move
+	 * @return The encoded move
+	 */
+	public static long encode(int from, int to, long captured, boolean promotion){
+		return from | ((long)to << TO_SHIFT) | (promotion ? PROMOTION : 0) | (captured << CAPTURED_SHIFT);
+	}
+
+	/**
+	 * @param m An encoded move
+	 * @return The square it starts on
+	 */
+	public static int from(long m){
+		return (int)m & 63;
+	}
+
+	/**
+	 * @param m An encoded move
+	 * @return The square it ends on
+	 */
+	public static int to(long m){
+		return (int)(m >>> TO_SHIFT) & 63;
+	}
+
+	/**
+	 * @param m An encoded move
+	 * @return The squares of the pieces it takes
+	 */
+	public static long captured(long m){
+		return m >>> CAPTURED_SHIFT;
+	}
+
+	/**
+	 * @param m An encoded move
+	 * @return true if a man is crowned by it
+	 */
+	public static boolean isPromotion(long m){
+		return (m & PROMOTION) != 0;
+	}
+
+	/**
+	 * Plays a move generated for this position, passing the turn.
+	 * @param m The move
+	 * @return The undo information to hand back to {@link #unmakeMove(long, long)}
+	 */
+	public long makeMove(long m){
+		long fromBit = 1L << from(m);
+		long toBit = 1L << to(m);
+		long captured = captured(m);
+		long undo = kings & captured;
+		if (p1Turn){
+			p1 = (p1 & ~fromBit) | toBit;
+			p2 &= ~captured;
+		}
+		else{
+			p2 = (p2 & ~fromBit) | toBit;
+			p1 &= ~captured;
+		}
+		if (((kings & fromBit) != 0) || isPromotion(m))
+			kings = (kings & ~fromBit & ~captured) | toBit;
+		else
+			kings &= ~captured;
+		p1Turn = !p1Turn;
+		depth++;
+		return undo;
+	}
+
+	/**
+	 * Takes back a move played with {@link #makeMove(long)}.
+	 * @param m The move that was played
+	 * @param undo The value makeMove returned for it
+	 */
+	public void unmakeMove(long m, long undo){
+		long fromBit = 1L << from(m);
+		long toBit = 1L << to(m);
+		long captured = captured(m);
+		boolean wasKing = ((kings & toBit) != 0) && !isPromotion(m);
+		p1Turn = !p1Turn;
+		depth--;
+		if (p1Turn){
+			p1 = (p1 & ~toBit) | fromBit;
+			p2 |= captured;
+		}
+		else{
+			p2 = (p2 & ~toBit) | fromBit;
+			p1 |= captured;
+		}
+		kings = (kings & ~toBit) | undo;
+		if (wasKing)
+			kings |= fromBit;
+	}
+
+	/**
+	 * Gets the piece at (i,j), using the same key as {@link Board#board}.
+	 * @param i The y coord
+	 * @param j The x coord
+	 * @return The piece at (i,j), 0 if empty or not a playable square
+	 */
+	public int get(int i, int j){
+		int s = rules.getGeometry().square(i, j);
+		if (s < 0)
+			return 0;
+		long bit = 1L << s;
+		int v;
+		if ((p1 & bit) != 0)
+			v = 1;
+		else if ((p2 & bit) != 0)
+			v = -1;
+		else
+			return 0;
+		return ((kings & bit) != 0) ? 2 * v : v;
+	}
+
+	/**
+	 * @return The rules the game is played under
+	 */
+	public Rules getRules(){
+		return rules;
+	}
+
+	/**
+	 * @return Bitboard of P1's men and kings
+	 */
+	public long getP1Pieces(){
+		return p1;
+	}
+
+	/**
+	 * @return Bitboard of P2's men and kings
+	 */
+	public long getP2Pieces(){
+		return p2;
+	}
+
+	/**
+	 * @return Bitboard of all kings
+	 */
+	public long getKings(){
+		return kings;
+	}
+
+	/**
+	 * @return The number of moves used to reach this state
+	 */
+	public int getDepth(){
+		return depth;
+	}
+
+	/**
+	 * Counts the leaf nodes of the full game tree below this position, for checking the
+	 * move generator against published counts.
+	 * @param depth The depth of the tree, at least 1
+	 * @return The number of positions depth moves ahead
+	 */
+	public long perft(int depth){
+		return perft(depth, new long[depth][MAX_MOVES]);
+	}
+
+	private long perft(int d, long[][] moves){
+		long[] list = moves[d - 1];
+		int n = rules.generate(this, list);
+		if (d == 1)
+			return n;
+		long count = 0;
+		for (int k = 0; k < n; k++){
+			long undo = makeMove(list[k]);
+			count += perft(d - 1, moves);
+			unmakeMove(list[k], undo);
+		}
+		return count;
+	}
+
+	/**
+	 * Copies this position into a Board, for the 8x8 generator.
+	 * @return A Board reused between calls
+	 */
+	Board packed(){
+		if (packed == null)
+			packed = new Board(0, 0, 0, 0);
+		packed.p1 = (int)p1;
+		packed.p2 = (int)p2;
+		packed.kings = (int)kings;
+		packed.p1Turn = p1Turn;
+		return packed;
+	}
+
+	/**
+	 * This prints the board, using the same key as {@link Board#printBoard()}.
+	 */
+	public void printBoard(){
+		int size = rules.getGeometry().getSize();
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < size; i++){
+			for (int j = 0; j < size; j++)
+				sb.append("Bb rR".charAt(get(i, j) + 2)).append(' ');
+			sb.append('\n');
+		}
+		System.out.print(sb.append("\n\n"));
+	}
+}
@@ -0,0 +1,83 @@
+package Checkers;
+
+/**
+ * Zobrist keys for identifying positions by a 64-bit hash. There is one random key per
+ * piece kind per playable square, plus one for P2 to move. The keys come from a fixed
+ * seed so that hashes are the same from run to run and can be stored in files.
+ * Boards keep their hash up to date incrementally; see {@link Board#getHash()}.
+ * @author mhtong
+ *
+ */
+public final class Zobrist {
+	/**Piece kind index of a P1 man*/
+	public static final int P1_MAN = 0;
+
+	/**Piece kind index of a P1 king*/
+	public static final int P1_KING = 1;
+
+	/**Piece kind index of a P2 man*/
+	public static final int P2_MAN = 2;
+
+	/**Piece kind index of a P2 king*/
+	public static final int P2_KING = 3;
+
+	/**The keys, indexed by kind * Board.SQUARES + square*/
+	private static final long[] PIECES = new long[4 * Board.SQUARES];
+
+	/**XORed into the hash when it is P2's turn*/
+	public static final long P2_TO_MOVE;
+
+	static {
+		long seed = 0x2545F4914F6CDD1DL;
+		for (int k = 0; k < PIECES.length; k++){
+			seed += 0x9E3779B97F4A7C15L;
+			PIECES[k] = mix(seed);
+		}
+		seed += 0x9E3779B97F4A7C15L;
+		P2_TO_MOVE = mix(seed);
+	}
+
+	private Zobrist(){
+	}
+
+	/**
+	 * The SplitMix64 finalizer.
+	 * @param z The value to mix
+	 * @return A well distributed 64-bit value
+	 */
+	private static long mix(long z){
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Gets the key of one piece on one square.
+	 * @param kind One of P1_MAN, P1_KING, P2_MAN, P2_KING
+	 * @param s The square index
+	 * @return The key
+	 */
+	public static long key(int kind, int s){
+		return PIECES[kind * Board.SQUARES + s];
+	}
+
+	/**
+	 * Computes the piece part of a hash from scratch. The side to move is not included.
+	 * @param p1 P1's pieces
+	 * @param p2 P2's pieces
+	 * @param kings The kings of either colour
+	 * @return The XOR of the keys of every piece on the board
+	 */
+	public static long hash(int p1, int p2, int kings){
+		long h = 0;
+		for (int m = p1; m != 0; m &= m - 1){
+			int s = Integer.numberOfTrailingZeros(m);
+			h ^= key(((kings >> s) & 1) == 0 ? P1_MAN : P1_KING, s);
+		}
+		for (int m = p2; m != 0; m &= m - 1){
+			int s = Integer.numberOfTrailingZeros(m);
+			h ^= key(((kings >> s) & 1) == 0 ? P2_MAN : P2_KING, s);
+		}
+		return h;
+	}
+}
@@ -0,0 +1,40 @@
+package EnginePlayer;
+
+/**
+ * The outcome of one completed iteration of an iterative deepening search.
+ * @author mhtong
+ *
+ */
+public class Iteration {
+	/**The depth searched*/
+	public final int depth;
+
+	/**Nodes visited by this iteration alone*/
+	public final long nodes;
+
+	/**Time this iteration took, in nanoseconds*/
+	public final long nanos;
+
+	/**The score of the best move, from the point of view of the side to move*/
+	public final int score;
+
+	/**The best move, as an action index*/
+	public final int bestMove;
+
+	/**The principal variation, as move indices into each successive position's move list*/
+	public final int[] pv;
+
+	Iteration(int depth, long nodes, long nanos, int score, int bestMove, int[] pv){
+		this.depth = depth;
+		this.nodes = nodes;
+		this.nanos = nanos;
+		this.score = score;
+		this.bestMove = bestMove;
+		this.pv = pv;
+	}
+
+	public String toString(){
+		return String.format("depth %2d  score %7d  move %3d  nodes %10d  %8.2f ms",
+				depth, score, bestMove, nodes, nanos / 1e6);
+	}
+}
@@ -0,0 +1,240 @@
+package EnginePlayer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import CheckersPlayer.Solver;
+import Checkers.Board;
+import Checkers.Evaluation;
+import Checkers.GameSession;
+import Checkers.Move;
+import Checkers.MoveOrdering;
+import Checkers.OpeningBook;
+import Checkers.Tablebase;
+import Checkers.TranspositionTable;
+
+/**
+ * An alpha-beta Solver that searches depth 1, 2, 3... until it reaches its maximum depth,
+ * the game's depth limit, its time per move, or the end of the game's look budget. Each
+ * iteration searches the previous one's principal variation first, and the best move found
+ * so far is always available, so the search can be cut off at any moment.
+ * <p>
+ * Every expansion goes through the calling thread's GameSession, so the search respects
+ * the game's depth and look limits. Node counts and the chosen move depend only on the
+ * boards passed to selectMove, unless a time limit cuts an iteration short.
+ * @author mhtong
+ *
+ */
+public class IterativeDeepeningSolver implements Solver {
+	/**The default maximum search depth when the game sets no depth limit*/
+	public static final int DEFAULT_MAX_DEPTH = 12;
+
+	/**The default transposition table size in megabytes*/
+	public static final int DEFAULT_TABLE_MB = 64;
+
+	/**The deepest iteration to run*/
+	protected final int maxDepth;
+
+	/**The transposition table, kept between moves*/
+	protected final TranspositionTable tt;
+
+	/**Stop flag and deadline shared with the searchers*/
+	final SearchControl control = new SearchControl();
+
+	/**The searcher running on the calling thread*/
+	final Searcher main;
+
+	/**Root move buffer*/
+	final long[] rootMoves = new long[Move.MAX_MOVES];
+
+	/**Milliseconds allowed per move, 0 for no limit*/
+	private volatile long moveTime;
+
+	/**Consulted before searching, or null*/
+	private volatile OpeningBook book;
+
+	/**The fewest games a book move needs*/
+	private volatile int bookMinGames;
+
+	/**The completed iterations of the last selectMove call*/
+	private final List<Iteration> iterations = new ArrayList<Iteration>();
+
+	/**
+	 * Creates a solver with no time limit.
+	 */
+	public IterativeDeepeningSolver(){
+		this(0, DEFAULT_MAX_DEPTH, DEFAULT_TABLE_MB);
+	}
+
+	/**
+	 * Creates a solver.
+	 * @param moveTimeMillis The time allowed per move, 0 for no limit
+	 * @param maxDepth The deepest iteration to run. The game's depth limit also caps it.
+	 * @param tableMegabytes The size of the transposition table
+	 */
+	public IterativeDeepeningSolver(long moveTimeMillis, int maxDepth, int tableMegabytes){
+		this.moveTime = moveTimeMillis;
+		this.maxDepth = maxDepth;
+		tt = new TranspositionTable(tableMegabytes);
+		main = new Searcher(control, tt, newMoveOrdering(), new Evaluation());
+	}
+
+	/**
+	 * Creates the move ordering for one search thread. Override to plug in a different
+	 * ordering; this is called from the constructor, once per thread.
+	 * @return A new MoveOrdering
+	 */
+	protected MoveOrdering newMoveOrdering(){
+		return new MoveOrdering(Searcher.MAX_PLY);
+	}
+
+	public int selectMove(Board b) {
+		GameSession session = GameSession.current();
+		int n = session.expand(b, rootMoves);
+		if (n == 0)
+			return -1;
+		if (n <= 1)
+			return 0;
+		OpeningBook book = this.book;
+		if (book != null){
+			int move = book.selectMove(b, bookMinGames);
+			if ((move >= 0) && (move < n)){
+				iterations.clear();
+				main.bestMove = move;
+				return move;
+			}
+		}
+		int depth = maxDepth;
+		if ((session.getDepthLimit() > 0) && (session.getDepthLimit() < depth))
+			depth = session.getDepthLimit();
+		tt.newSearch();
+		iterations.clear();
+		control.start(moveTime);
+		startHelpers(session, b, n, depth);
+		main.run(session, b, rootMoves, n, 1, depth, 0, iterations);
+		control.stop = true;
+		joinHelpers();
+		int move = main.bestMove;
+		return (move < 0) ? 0 : move;
+	}
+
+	/**
+	 * Starts any helper searchers before the main search begins. The base solver has none.
+	 * @param session The game being played
+	 * @param b The root board
+	 * @param n The number of root moves in rootMoves
+	 * @param depth The deepest iteration to run
+	 */
+	void startHelpers(GameSession session, Board b, int n, int depth){
+	}
+
+	/**
+	 * Waits for any helper searchers after the stop flag has been raised.
+	 */
+	void joinHelpers(){
+	}
+
+	/**
+	 * Sets the opening book to consult. When it has a move for the board, selectMove plays
+	 * it without searching.
+	 * @param book The book, or null for none
+	 * @param minGames The fewest games a book move must have been played in
+	 */
+	public void setOpeningBook(OpeningBook book, int minGames){
+		this.bookMinGames = minGames;
+		this.book = book;
+	}
+
+	/**
+	 * Sets the weights the search scores positions with. Each search thread gets its own
+	 * copy.
+	 * @param evaluation The weights to use, e.g. from Evaluation.load
+	 */
+	public void setEvaluation(Evaluation evaluation){
+		main.evaluation = new Evaluation(evaluation);
+	}
+
+	/**
+	 * Sets the endgame tables to consult. Below the root, any position the tables hold is
+	 * scored from them without being searched or charged to the game's look budget.
+	 * @param tablebase The tables, or null for none
+	 */
+	public void setTablebase(Tablebase tablebase){
+		main.tablebase = tablebase;
+	}
+
+	/**
+	 * Sets the time allowed per move.
+	 * @param millis The time in milliseconds, 0 for no limit
+	 */
+	public void setMoveTime(long millis){
+		moveTime = millis;
+	}
+
+	/**
+	 * Stops a search in progress on another thread. selectMove then returns the best move
+	 * found so far.
+	 */
+	public void stop(){
+		control.stop = true;
+	}
+
+	/**
+	 * Gets the best move found so far by a search in progress, or by the last one.
+	 * @return An action index, -1 if no move has been searched yet
+	 */
+	public int getBestMoveSoFar(){
+		return main.bestMove;
+	}
+
+	/**
+	 * Gets a record of each iteration the last selectMove call completed, with its node
+	 * count, time, score and principal variation.
+	 * @return The iterations, shallowest first
+	 */
+	public List<Iteration> getIterations(){
+		return iterations;
+	}
+
+	/**
+	 * Gets the nodes visited during the last selectMove call.
+	 * @return The total node count
+	 */
+	public long getNodes(){
+		return main.nodes;
+	}
+
+	/**
+	 * Gets the quiescence nodes visited during the last selectMove call. They are counted
+	 * apart from getNodes and are not charged to the game's look budget.
+	 * @return The total quiescence node count
+	 */
+	public long getQuiescenceNodes(){
+		return main.qnodes;
+	}
+
+	/**
+	 * Gets the nodes visited by the calling thread during the last selectMove call. This is
+	 * reproducible from run to run when single threaded and not limited by time.
+	 * @return The main thread's node count
+	 */
+	public long getMainNodes(){
+		return main.nodes;
+	}
+
+	/**
+	 * Gets the deepest iteration completed in the last selectMove call.
+	 * @return The completed depth
+	 */
+	public int getCompletedDepth(){
+		return main.completedDepth;
+	}
+
+	/**
+	 * Gets the transposition table, for its hit-rate counters.
+	 * @return The table
+	 */
+	public TranspositionTable getTable(){
+		return tt;
+	}
+}
@@ -0,0 +1,659 @@
+package EnginePlayer;
+
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import CheckersPlayer.Solver;
+import Checkers.Board;
+import Checkers.Evaluation;
+import Checkers.Evaluator;
+import Checkers.Features;
+import Checkers.GameSession;
+import Checkers.Move;
+import Checkers.SearchStats;
+
+/**
+ * A Monte Carlo tree search Solver (UCT). Each iteration walks down the tree choosing the
+ * child with the best upper confidence bound, expands the leaf it reaches, plays random
+ * moves from there and backs the result up the path. The most visited root move is played.
+ * <p>
+ * The search is tree parallel: every thread works on one shared tree. A thread adds a
+ * visit to each node on its way down before the result is known (a virtual loss), so
+ * other threads spread out to other branches instead of all following the same path.
+ * <p>
+ * Nodes live in parallel primitive arrays indexed by node number; a node's children are
+ * allocated side by side in generation order, so child k of a node is action k. After a
+ * move is played the subtree below the opponent's reply is kept and searched further on
+ * the next selectMove call. The arrays are not compacted: once they are half full the
+ * tree is started afresh.
+ * <p>
+ * Every expansion, including each playout move, goes through the game's GameSession, so
+ * the search respects the game's look limit, and playouts stop at its depth limit.
+ * Playouts also stop after a fixed number of plies. Positions where a playout stops
+ * before the game ends are scored with an Evaluation turned into a win probability.
+ * Searching ends at the first of: the time per move, the playout limit, the look budget
+ * running out, or the tree filling up.
+ * <p>
+ * With an {@link Evaluator} set, leaves are scored by it instead of by playouts. Each
+ * thread walks down to several leaves in turn, their virtual losses steering it to
+ * different ones, encodes them into one feature buffer, and backs all of them up after a
+ * single batched call. Each leaf counts as one playout.
+ * @author mhtong
+ *
+ */
+public class MCTSSolver implements Solver {
+	/**Node state: children not generated yet*/
+	private static final int LEAF = 0;
+
+	/**Node state: a thread is generating its children*/
+	private static final int EXPANDING = 1;
+
+	/**Node state: children generated (possibly none, for a finished game)*/
+	private static final int EXPANDED = 2;
+
+	/**Results are kept in thousandths of a win*/
+	private static final int POINTS = 1000;
+
+	/**The UCT exploration constant*/
+	private static final double EXPLORATION = 1.4;
+
+	/**Evaluation units per factor e of odds when turning a score into a win probability*/
+	private static final double SCALE = 200;
+
+	/**The deepest path through the tree a thread can follow*/
+	private static final int MAX_PATH = 512;
+
+	/**The move each node was reached by*/
+	private final long[] move;
+
+	/**The first child of each node*/
+	private final int[] firstChild;
+
+	/**The number of children of each node*/
+	private final int[] childCount;
+
+	/**LEAF, EXPANDING or EXPANDED for each node*/
+	private final AtomicIntegerArray state;
+
+	/**Visits to each node, including those still in progress*/
+	private final AtomicIntegerArray visits;
+
+	/**Results backed up through each node, in POINTS, for the side that moved into it*/
+	private final AtomicLongArray points;
+
+	/**Nodes allocated*/
+	private final AtomicInteger size = new AtomicInteger();
+
+	/**The current root node, -1 for no tree*/
+	private int root = -1;
+
+	/**The board at the root*/
+	private Board rootBoard;
+
+	/**The root child played by the last selectMove call, -1 if none*/
+	private int played = -1;
+
+	/**Search threads, including the calling thread*/
+	private final int threads;
+
+	/**Milliseconds per move, 0 for no limit*/
+	private volatile long moveTime;
+
+	/**Playouts per move, 0 for no limit*/
+	private final int maxPlayouts;
+
+	/**Random moves per playout before it is scored with the evaluation*/
+	private int playoutPlies = 40;
+
+	/**Scores leaves in place of playouts, null to play out*/
+	private volatile Evaluator evaluator;
+
+	/**Leaves each thread collects per evaluator call*/
+	private volatile int batchSize = 1;
+
+	/**Stop flag and deadline shared with the workers*/
+	private final SearchControl control = new SearchControl();
+
+	/**Playouts started this move*/
+	private final AtomicInteger playouts = new AtomicInteger();
+
+	/**Visits the root already had when this move's search began*/
+	private int reusedVisits;
+
+	/**One per thread*/
+	private final Worker[] workers;
+
+	/**Runs the helper workers, null when single threaded*/
+	private final ExecutorService pool;
+
+	/**
+	 * Creates a solver using one thread per available processor and one second per move.
+	 */
+	public MCTSSolver(){
+		this(Runtime.getRuntime().availableProcessors(), 1000, 0, 1 << 20);
+	}
+
+	/**
+	 * Creates a solver.
+	 * @param threads The number of search threads (at least 1)
+	 * @param moveTimeMillis The time allowed per move, 0 for no limit
+	 * @param maxPlayouts The playouts allowed per move, 0 for no limit
+	 * @param maxNodes The capacity of the tree
+	 */
+	public MCTSSolver(int threads, long moveTimeMillis, int maxPlayouts, int maxNodes){
+		this.threads = Math.max(1, threads);
+		this.moveTime = moveTimeMillis;
+		this.maxPlayouts = maxPlayouts;
+		move = new long[maxNodes];
+		firstChild = new int[maxNodes];
+		childCount = new int[maxNodes];
+		state = new AtomicIntegerArray(maxNodes);
+		visits = new AtomicIntegerArray(maxNodes);
+		points = new AtomicLongArray(maxNodes);
+		workers = new Worker[this.threads];
+		for (int t = 0; t < this.threads; t++)
+			workers[t] = new Worker(t);
+		if (this.threads > 1){
+			pool = Executors.newFixedThreadPool(this.threads - 1, new ThreadFactory(){
+				public Thread newThread(Runnable r){
+					Thread t = new Thread(r, "MCTSSolver helper");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		else
+			pool = null;
+	}
+
+	public int selectMove(Board b) {
+		GameSession session = GameSession.current();
+		findRoot(b);
+		if (state.get(root) != EXPANDED){
+			int n = expand(root, b, session, workers[0]);
+			workers[0].report(session);
+			if (n < 0)
+				return 0;
+		}
+		int n = childCount[root];
+		if (n == 0)
+			return -1;
+		if (n == 1){
+			played = firstChild[root];
+			return 0;
+		}
+		reusedVisits = visits.get(root);
+		playouts.set(0);
+		control.start(moveTime);
+		Future<?>[] running = new Future<?>[threads - 1];
+		for (int t = 1; t < threads; t++){
+			final Worker w = workers[t];
+			running[t - 1] = pool.submit(new Runnable(){
+				public void run(){
+					w.search(session);
+				}
+			});
+		}
+		workers[0].search(session);
+		control.stop = true;
+		for (Future<?> f:running){
+			try{
+				f.get();
+			}
+			catch (InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			catch (ExecutionException e){
+				throw new RuntimeException(e.getCause());
+			}
+		}
+		SearchStats stats = session.getStats();
+		if (stats != null)
+			stats.add(SearchStats.NODES, playouts.get());
+		int best = firstChild[root];
+		for (int c = best + 1; c < firstChild[root] + n; c++)
+			if (visits.get(c) > visits.get(best))
+				best = c;
+		played = best;
+		return best - firstChild[root];
+	}
+
+	/**
+	 * Makes the root the node for b: the reply to the last move played, if the tree has
+	 * it and there is room to keep searching, else a new tree.
+	 * @param b The board to search
+	 */
+	private void findRoot(Board b){
+		int next = -1;
+		if ((played >= 0) && (state.get(played) == EXPANDED) && (size.get() < move.length / 2)){
+			Board t = new Board(rootBoard);
+			t.makeMove(move[played]);
+			for (int c = firstChild[played]; c < firstChild[played] + childCount[played]; c++){
+				int undo = t.makeMove(move[c]);
+				if ((t.getP1Pieces() == b.getP1Pieces()) && (t.getP2Pieces() == b.getP2Pieces()) &&
+						(t.getKings() == b.getKings()) && (t.p1Turn == b.p1Turn)){
+					next = c;
+					break;
+				}
+				t.unmakeMove(move[c], undo);
+			}
+		}
+		if (next < 0){
+			size.set(1);
+			next = 0;
+			state.set(0, LEAF);
+			visits.set(0, 0);
+			points.set(0, 0);
+		}
+		root = next;
+		rootBoard = new Board(b);
+		played = -1;
+	}
+
+	/**
+	 * Generates the children of a node. Only one thread expands a node; others that
+	 * arrive meanwhile treat it as a leaf.
+	 * @param node The node
+	 * @param b The node's board
+	 * @param session The game, which is charged for the expansion
+	 * @param w The worker expanding it, whose move buffer is used and which counts the expansion
+	 * @return The number of children, 0 for a finished game, -1 if the node cannot be
+	 * expanded now (another thread is on it, a game limit stops it, or the tree is full)
+	 */
+	private int expand(int node, Board b, GameSession session, Worker w){
+		if (!state.compareAndSet(node, LEAF, EXPANDING))
+			return -1;
+		long[] buf = w.moves;
+		int n = session.expandUncounted(b, buf);
+		if (n < 0){
+			state.set(node, LEAF);
+			return -1;
+		}
+		w.expands++;
+		w.generated += n;
+		int first = size.getAndAdd(n);
+		if (first + n > move.length){
+			control.stop = true;
+			state.set(node, LEAF);
+			return -1;
+		}
+		for (int i = 0; i < n; i++){
+			int c = first + i;
+			move[c] = buf[i];
+			state.set(c, LEAF);
+			visits.set(c, 0);
+			points.set(c, 0);
+		}
+		firstChild[node] = first;
+		childCount[node] = n;
+		state.set(node, EXPANDED);
+		return n;
+	}
+
+	/**
+	 * Sets the time allowed per move.
+	 * @param millis The time in milliseconds, 0 for no limit
+	 */
+	public void setMoveTime(long millis){
+		moveTime = millis;
+	}
+
+	/**
+	 * Sets how many random moves a playout makes before it is scored by the evaluation.
+	 * @param plies The playout length
+	 */
+	public void setPlayoutPlies(int plies){
+		playoutPlies = Math.max(0, Math.min(plies, MAX_PATH));
+	}
+
+	/**
+	 * Scores leaves with a batch evaluator instead of random playouts.
+	 * @param e The evaluator, null to go back to playouts
+	 * @param batch The leaves each thread passes to one evaluator call
+	 */
+	public void setEvaluator(Evaluator e, int batch){
+		batchSize = Math.max(1, batch);
+		evaluator = e;
+	}
+
+	/**
+	 * Stops a search in progress on another thread.
+	 */
+	public void stop(){
+		control.stop = true;
+	}
+
+	/**
+	 * @return The playouts run during the last selectMove call
+	 */
+	public int getPlayouts(){
+		return playouts.get();
+	}
+
+	/**
+	 * @return The visits the root carried over from earlier moves when the last selectMove call began
+	 */
+	public int getReusedVisits(){
+		return reusedVisits;
+	}
+
+	/**
+	 * @return The number of tree nodes in use
+	 */
+	public int getTreeSize(){
+		return Math.min(size.get(), move.length);
+	}
+
+	/**
+	 * One search thread, with its own board and buffers.
+	 */
+	private class Worker {
+		final Random random;
+
+		final long[] moves = new long[Move.MAX_MOVES];
+
+		final int[] path = new int[MAX_PATH];
+
+		final boolean[] mover = new boolean[MAX_PATH];
+
+		final int[] undo = new int[MAX_PATH];
+
+		/**Moves of the playout in progress*/
+		final long[] line = new long[MAX_PATH];
+
+		/**Undo values of the playout in progress*/
+		final int[] lineUndo = new int[MAX_PATH];
+
+		final Evaluation evaluation = new Evaluation();
+
+		Board board;
+
+		/**Feature vectors of the leaves waiting for the evaluator*/
+		float[] features = new float[0];
+
+		/**The evaluator's results*/
+		float[] results;
+
+		/**Paths to the waiting leaves*/
+		int[][] pendingPath;
+
+		/**Who moved into each node of the waiting paths*/
+		boolean[][] pendingMover;
+
+		/**Lengths of the waiting paths*/
+		int[] pendingLength;
+
+		/**Whether P1 is to move at each waiting leaf*/
+		boolean[] pendingP1;
+
+		/**The number of waiting leaves*/
+		int pending;
+
+		/**Expansions and the moves they generated since the last report*/
+		long expands, generated;
+
+		Worker(int t){
+			random = new Random(0x5DEECE66DL * (t + 1));
+		}
+
+		/**
+		 * Runs iterations until the search is stopped.
+		 */
+		void search(GameSession session){
+			board = new Board(rootBoard);
+			Evaluator e = evaluator;
+			int batch = batchSize;
+			if ((e != null) && (features.length != batch * Features.SIZE)){
+				features = new float[batch * Features.SIZE];
+				results = new float[batch];
+				pendingPath = new int[batch][MAX_PATH];
+				pendingMover = new boolean[batch][MAX_PATH];
+				pendingLength = new int[batch];
+				pendingP1 = new boolean[batch];
+			}
+			while (!control.expired()){
+				int p = playouts.incrementAndGet();
+				if ((maxPlayouts > 0) && (p > maxPlayouts)){
+					playouts.decrementAndGet();
+					break;
+				}
+				if (!iterate(session, e, batch)){
+					control.stop = true;
+					break;
+				}
+			}
+			if (pending > 0)
+				flush(e);
+			report(session);
+		}
+
+		/**
+		 * Adds the expansions counted since the last report to the game's stats, if any.
+		 */
+		void report(GameSession session){
+			SearchStats stats = session.getStats();
+			if (stats != null){
+				stats.add(SearchStats.EXPANDS, expands);
+				stats.add(SearchStats.MOVES, generated);
+			}
+			expands = 0;
+			generated = 0;
+		}
+
+		/**
+		 * Runs one selection, expansion, playout and backup. With an evaluator the leaf is
+		 * queued instead, and the queue is evaluated and backed up once it holds a batch.
+		 * A selection stopped by MAX_PATH on a node that has children scores that node as a
+		 * leaf, by the evaluator or estimate(), rather than as a finished game.
+		 * @param session The game
+		 * @param e The evaluator, null for a playout
+		 * @param batch The evaluator's batch size
+		 * @return false if the look budget ran out, so the search must stop
+		 */
+		boolean iterate(GameSession session, Evaluator e, int batch){
+			int node = root;
+			int len = 0;
+			visits.incrementAndGet(node);
+			path[len++] = node;
+			while ((state.get(node) == EXPANDED) && (childCount[node] > 0) && (len < MAX_PATH)){
+				int c = select(node);
+				mover[len] = board.p1Turn;
+				undo[len] = board.makeMove(move[c]);
+				visits.incrementAndGet(c);
+				path[len++] = c;
+				node = c;
+			}
+			double result;
+			boolean expanded = state.get(node) == EXPANDED;
+			if (expanded && (childCount[node] == 0))
+				result = finished();
+			else{
+				if (!expanded && (visits.get(node) > 1)){
+					int n = expand(node, board, session, this);
+					if ((n < 0) && (session.getLooksLeft() == 0)){
+						retreat(len);
+						return false;
+					}
+					if (n == 0){
+						result = finished();
+						backup(len, result);
+						return true;
+					}
+				}
+				if (e != null){
+					queue(len);
+					if (pending == batch)
+						flush(e);
+					return true;
+				}
+				result = expanded ? estimate() : playout(session);
+				if (Double.isNaN(result)){
+					retreat(len);
+					return false;
+				}
+			}
+			backup(len, result);
+			return true;
+		}
+
+		/**
+		 * Picks the child with the best upper confidence bound. Unvisited children come
+		 * first, in generation order.
+		 */
+		int select(int node){
+			int first = firstChild[node];
+			int n = childCount[node];
+			double logParent = Math.log(Math.max(1, visits.get(node)));
+			int best = first;
+			double bestValue = Double.NEGATIVE_INFINITY;
+			for (int c = first; c < first + n; c++){
+				int v = visits.get(c);
+				if (v == 0)
+					return c;
+				double value = points.get(c) / ((double)POINTS * v) + EXPLORATION * Math.sqrt(logParent / v);
+				if (value > bestValue){
+					bestValue = value;
+					best = c;
+				}
+			}
+			return best;
+		}
+
+		/**
+		 * Plays random moves from the board, then takes them back.
+		 * @return The result for P1 between 0 and 1, NaN if the look budget ran out
+		 */
+		double playout(GameSession session){
+			double result = Double.NaN;
+			int ply = 0;
+			while (true){
+				if (ply >= playoutPlies){
+					result = estimate();
+					break;
+				}
+				int n = session.expandUncounted(board, moves);
+				if (n < 0){
+					if (session.getLooksLeft() != 0)
+						result = estimate();
+					break;
+				}
+				expands++;
+				generated += n;
+				if (n == 0){
+					result = finished();
+					break;
+				}
+				line[ply] = moves[random.nextInt(n)];
+				lineUndo[ply] = board.makeMove(line[ply]);
+				ply++;
+			}
+			while (ply > 0){
+				ply--;
+				board.unmakeMove(line[ply], lineUndo[ply]);
+			}
+			return result;
+		}
+
+		/**
+		 * Scores a board with no moves: a side with no pieces has lost, one that is blocked has tied.
+		 * @return The result for P1
+		 */
+		double finished(){
+			int own = board.p1Turn ? board.getP1Pieces() : board.getP2Pieces();
+			if (own != 0)
+				return 0.5;
+			return board.p1Turn ? 0 : 1;
+		}
+
+		/**
+		 * Turns the evaluation of the board into a chance of P1 winning.
+		 * @return The result for P1
+		 */
+		double estimate(){
+			if (board.getP1Pieces() == 0)
+				return 0;
+			if (board.getP2Pieces() == 0)
+				return 1;
+			double s = evaluation.evaluateStatic(board);
+			double p = 1 / (1 + Math.exp(-s / SCALE));
+			return board.p1Turn ? p : 1 - p;
+		}
+
+		/**
+		 * Adds a result to every node on the path and takes the path's moves back.
+		 * @param len The path length
+		 * @param result The result for P1
+		 */
+		void backup(int len, double result){
+			credit(path, mover, len, result);
+			unwind(len);
+		}
+
+		/**
+		 * Adds a result to every node of a path.
+		 * @param nodes The path
+		 * @param movers Who moved into each node
+		 * @param len The path length
+		 * @param result The result for P1
+		 */
+		void credit(int[] nodes, boolean[] movers, int len, double result){
+			long forP1 = Math.round(result * POINTS);
+			for (int k = len - 1; k > 0; k--)
+				points.addAndGet(nodes[k], movers[k] ? forP1 : POINTS - forP1);
+		}
+
+		/**
+		 * Takes back the path's moves, leaving the board at the root.
+		 * @param len The path length
+		 */
+		void unwind(int len){
+			for (int k = len - 1; k > 0; k--)
+				board.unmakeMove(move[path[k]], undo[k]);
+		}
+
+		/**
+		 * Puts the board's features and the path to it in the evaluator's queue, keeping
+		 * the path's virtual losses until the result is in.
+		 * @param len The path length
+		 */
+		void queue(int len){
+			Features.encode(board, features, pending * Features.SIZE);
+			System.arraycopy(path, 0, pendingPath[pending], 0, len);
+			System.arraycopy(mover, 0, pendingMover[pending], 0, len);
+			pendingLength[pending] = len;
+			pendingP1[pending] = board.p1Turn;
+			pending++;
+			unwind(len);
+		}
+
+		/**
+		 * Evaluates the queued leaves in one call and backs up their results.
+		 * @param e The evaluator
+		 */
+		void flush(Evaluator e){
+			e.evaluate(features, pending, results);
+			for (int k = 0; k < pending; k++)
+				credit(pendingPath[k], pendingMover[k], pendingLength[k], pendingP1[k] ? results[k] : 1 - results[k]);
+			pending = 0;
+		}
+
+		/**
+		 * Takes back the path's virtual losses and moves without adding a result.
+		 * @param len The path length
+		 */
+		void retreat(int len){
+			for (int k = len - 1; k > 0; k--){
+				visits.decrementAndGet(path[k]);
+				board.unmakeMove(move[path[k]], undo[k]);
+			}
+			visits.decrementAndGet(path[0]);
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package EnginePlayer;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import Checkers.Board;
+import Checkers.Evaluation;
+import Checkers.GameSession;
+import Checkers.Tablebase;
+
+/**
+ * A parallel alpha-beta Solver using Lazy SMP. Every thread runs the same iterative
+ * deepening search on its own copy of the board and they share one transposition table,
+ * so each thread's work speeds up the others through cutoffs and move ordering. Helper
+ * threads start at staggered depths and on rotated root moves to spread out. The main
+ * thread's answer is the one returned; helpers are stopped once it finishes.
+ * <p>
+ * With one thread no helpers are started and this behaves exactly like an
+ * IterativeDeepeningSolver.
+ * <p>
+ * Every expansion goes through the calling thread's GameSession, so the search respects
+ * the game's depth and look limits, and all threads draw on the same look budget.
+ * @author mhtong
+ *
+ */
+public class ParallelSolver extends IterativeDeepeningSolver {
+	/**The number of search threads, including the calling thread*/
+	private final int threads;
+
+	/**The helper searchers*/
+	private final Searcher[] helpers;
+
+	/**Runs the helper searchers, null when single threaded*/
+	private final ExecutorService pool;
+
+	/**The helpers' tasks for the current selectMove call*/
+	private final Future<?>[] running;
+
+	/**
+	 * Creates a solver using one thread per available processor.
+	 */
+	public ParallelSolver(){
+		this(Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_DEPTH, DEFAULT_TABLE_MB);
+	}
+
+	/**
+	 * Creates a solver with no time limit.
+	 * @param threads The number of search threads (at least 1)
+	 * @param maxDepth The deepest iteration to run. The game's depth limit also caps it.
+	 * @param tableMegabytes The size of the transposition table
+	 */
+	public ParallelSolver(int threads, int maxDepth, int tableMegabytes){
+		super(0, maxDepth, tableMegabytes);
+		this.threads = Math.max(1, threads);
+		helpers = new Searcher[this.threads - 1];
+		running = new Future<?>[this.threads - 1];
+		for (int t = 0; t < helpers.length; t++)
+			helpers[t] = new Searcher(control, tt, newMoveOrdering(), new Evaluation());
+		if (this.threads > 1){
+			pool = Executors.newFixedThreadPool(this.threads - 1, new ThreadFactory(){
+				public Thread newThread(Runnable r){
+					Thread t = new Thread(r, "ParallelSolver helper");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		else
+			pool = null;
+	}
+
+	public void setEvaluation(Evaluation evaluation){
+		super.setEvaluation(evaluation);
+		for (Searcher s:helpers)
+			s.evaluation = new Evaluation(evaluation);
+	}
+
+	public void setTablebase(Tablebase tablebase){
+		super.setTablebase(tablebase);
+		for (Searcher s:helpers)
+			s.tablebase = tablebase;
+	}
+
+	void startHelpers(final GameSession session, final Board b, final int n, final int depth){
+		for (int t = 0; t < helpers.length; t++){
+			final Searcher s = helpers[t];
+			final int first = 1 + ((t + 1) & 1);
+			final int rotate = t + 1;
+			running[t] = pool.submit(new Runnable(){
+				public void run(){
+					s.run(session, b, rootMoves, n, first, depth, rotate, null);
+				}
+			});
+		}
+	}
+
+	void joinHelpers(){
+		for (Future<?> f:running){
+			try{
+				f.get();
+			}
+			catch (InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			catch (ExecutionException e){
+				throw new RuntimeException(e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Gets the nodes visited by all threads during the last selectMove call.
+	 * @return The total node count
+	 */
+	public long getNodes(){
+		long total = main.nodes;
+		for (Searcher s:helpers)
+			total += s.nodes;
+		return total;
+	}
+
+	/**
+	 * Gets the quiescence nodes visited by all threads during the last selectMove call.
+	 * @return The total quiescence node count
+	 */
+	public long getQuiescenceNodes(){
+		long total = main.qnodes;
+		for (Searcher s:helpers)
+			total += s.qnodes;
+		return total;
+	}
+}
@@ -0,0 +1,54 @@
+package EnginePlayer;
+
+/**
+ * The stop signal shared by every searcher working on one selectMove call: an explicit
+ * stop flag and an optional wall-clock deadline.
+ * @author mhtong
+ *
+ */
+class SearchControl {
+	/**Set to stop every searcher*/
+	volatile boolean stop;
+
+	/**System.nanoTime() at which the search must stop, 0 for no deadline*/
+	private long deadline;
+
+	/**System.nanoTime() when the search started*/
+	private long start;
+
+	/**
+	 * Starts a new search.
+	 * @param millis The time allowed, 0 for no limit
+	 */
+	void start(long millis){
+		stop = false;
+		start = System.nanoTime();
+		deadline = (millis > 0) ? start + millis * 1000000L : 0;
+	}
+
+	/**
+	 * Checks the deadline, raising the stop flag once it has passed.
+	 * @return true if the search should stop
+	 */
+	boolean expired(){
+		if ((deadline != 0) && (System.nanoTime() - deadline >= 0))
+			stop = true;
+		return stop;
+	}
+
+	/**
+	 * Tells whether another iteration is worth starting: one that begins after half the
+	 * time is gone will almost never finish.
+	 * @return true if there is no deadline or less than half the time has been used
+	 */
+	boolean roomForIteration(){
+		return (deadline == 0) || (System.nanoTime() - start < (deadline - start) / 2);
+	}
+
+	/**
+	 * @return Nanoseconds since the search started
+	 */
+	long elapsed(){
+		return System.nanoTime() - start;
+	}
+}
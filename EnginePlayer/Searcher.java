@@ -0,0 +1,513 @@
+package EnginePlayer;
+
+import java.util.List;
+
+import Checkers.Board;
+import Checkers.Evaluation;
+import Checkers.GameSession;
+import Checkers.Move;
+import Checkers.MoveOrdering;
+import Checkers.PositionHistory;
+import Checkers.SearchStats;
+import Checkers.Tablebase;
+import Checkers.TranspositionTable;
+
+/**
+ * One search thread of an IterativeDeepeningSolver. It owns its own copy of the board and
+ * per-ply move buffers and plays moves in place with make/unmake, so a search allocates
+ * nothing. Threads only share the transposition table and the SearchControl.
+ * <p>
+ * Each iteration searches the previous iteration's principal variation first; other
+ * moves are ordered by a MoveOrdering (hash move, captures, killers, history).
+ * <p>
+ * The searcher keeps its own copy of the game's PositionHistory with the line being
+ * searched pushed on top, and scores a position that repeats an earlier one, or that the
+ * move rule has drawn, as a draw without searching it.
+ * @author mhtong
+ *
+ */
+class Searcher {
+	/**Larger than any score*/
+	static final int INFINITY = 2000000;
+
+	/**The score of a won position, less the number of plies needed to win it*/
+	static final int WIN = 1000000;
+
+	/**Scores beyond this are wins or losses in a known number of plies*/
+	static final int WIN_BOUND = WIN - 1000;
+
+	/**The deepest ply a search may reach*/
+	static final int MAX_PLY = 128;
+
+	/**Tells the searcher when to stop*/
+	private final SearchControl control;
+
+	/**Scores the leaves, tracking the board as moves are made*/
+	Evaluation evaluation;
+
+	/**Endgame tables probed below the root, or null*/
+	Tablebase tablebase;
+
+	/**The shared transposition table*/
+	private final TranspositionTable tt;
+
+	/**The game being played, whose limits the search respects*/
+	private GameSession session;
+
+	/**The board being searched, changed in place*/
+	private Board board;
+
+	/**The game's positions followed by the line being searched*/
+	private final PositionHistory history = new PositionHistory();
+
+	/**Move buffers, one per ply*/
+	private final long[][] moves = new long[MAX_PLY][Move.MAX_MOVES];
+
+	/**Orders the moves at each node*/
+	private final MoveOrdering ordering;
+
+	/**Move visiting order, one per ply*/
+	private final int[][] order = new int[MAX_PLY][Move.MAX_MOVES];
+
+	/**Triangular principal variation table: pv[ply][ply..pvLength[ply]) is the line found from ply*/
+	private final int[][] pv = new int[MAX_PLY][MAX_PLY];
+
+	/**Lengths of the lines in pv*/
+	private final int[] pvLength = new int[MAX_PLY];
+
+	/**The last completed iteration's principal variation*/
+	private final int[] prevPv = new int[MAX_PLY];
+
+	/**The length of prevPv*/
+	private int prevPvLength;
+
+	/**True while the search is still on the previous principal variation*/
+	private boolean followPv;
+
+	/**Where to record completed iterations, null if not wanted*/
+	private List<Iteration> iterations;
+
+	/**Nodes visited in the current selectMove call*/
+	long nodes;
+
+	/**Quiescence nodes visited in the current selectMove call, counted apart from nodes*/
+	long qnodes;
+
+	/**Beta cutoffs in the current selectMove call*/
+	long cutoffs;
+
+	/**Transposition table probes and hits in the current selectMove call*/
+	long ttProbes, ttHits;
+
+	/**Expansions and the moves they generated in the current selectMove call*/
+	long expands, generated;
+
+	/**Capture-only expansions in the current selectMove call*/
+	long captureExpands;
+
+	/**Static exchange estimates of the captures in order, one list per ply*/
+	private final int[][] gains = new int[MAX_PLY][Move.MAX_MOVES];
+
+	/**True once the search has been stopped or run out of looks; the current iteration is then worthless*/
+	boolean aborted;
+
+	/**The best root move found so far, -1 if none. Readable from other threads while searching.*/
+	volatile int bestMove;
+
+	/**The score of bestMove*/
+	int bestScore;
+
+	/**The deepest iteration completed*/
+	int completedDepth;
+
+	/**
+	 * Creates a searcher.
+	 * @param control The stop signal of the solver running it
+	 * @param tt The shared transposition table
+	 * @param ordering This searcher's own move ordering
+	 * @param evaluation This searcher's own evaluation
+	 */
+	Searcher(SearchControl control, TranspositionTable tt, MoveOrdering ordering, Evaluation evaluation){
+		this.control = control;
+		this.tt = tt;
+		this.ordering = ordering;
+		this.evaluation = evaluation;
+	}
+
+	/**
+	 * Runs an iterative deepening search of b.
+	 * @param session The game being played
+	 * @param b The root board. It is copied, not changed.
+	 * @param root The root moves as returned by Game.expand(Board, long[])
+	 * @param n The number of root moves
+	 * @param firstDepth The depth of the first iteration
+	 * @param maxDepth The depth of the last iteration
+	 * @param rotate How far to rotate the root moves after the first, so helper threads start on different moves
+	 * @param iterations Receives a record of each completed iteration, or null
+	 */
+	void run(GameSession session, Board b, long[] root, int n, int firstDepth, int maxDepth, int rotate,
+			List<Iteration> iterations){
+		this.session = session;
+		this.iterations = iterations;
+		board = new Board(b);
+		evaluation.reset(board);
+		session.copyHistory(history);
+		System.arraycopy(root, 0, moves[0], 0, n);
+		nodes = 0;
+		qnodes = 0;
+		cutoffs = 0;
+		ttProbes = 0;
+		ttHits = 0;
+		expands = 0;
+		generated = 0;
+		captureExpands = 0;
+		aborted = false;
+		bestMove = -1;
+		bestScore = 0;
+		completedDepth = 0;
+		prevPvLength = 0;
+		ordering.newSearch();
+		for (int depth = firstDepth; depth <= maxDepth; depth++){
+			long startNodes = nodes;
+			long startTime = control.elapsed();
+			followPv = true;
+			searchRoot(n, depth, rotate);
+			if (aborted)
+				break;
+			completedDepth = depth;
+			prevPvLength = pvLength[0];
+			System.arraycopy(pv[0], 0, prevPv, 0, prevPvLength);
+			if (iterations != null){
+				int[] line = new int[prevPvLength];
+				System.arraycopy(prevPv, 0, line, 0, prevPvLength);
+				iterations.add(new Iteration(depth, nodes - startNodes, control.elapsed() - startTime,
+						bestScore, bestMove, line));
+			}
+			if ((Math.abs(bestScore) > WIN_BOUND) || !control.roomForIteration())
+				break;
+		}
+		SearchStats stats = session.getStats();
+		if (stats != null){
+			stats.add(SearchStats.NODES, nodes);
+			stats.add(SearchStats.CUTOFFS, cutoffs);
+			stats.add(SearchStats.TT_PROBES, ttProbes);
+			stats.add(SearchStats.TT_HITS, ttHits);
+			stats.add(SearchStats.EXPANDS, expands);
+			stats.add(SearchStats.MOVES, generated);
+			stats.add(SearchStats.CAPTURE_EXPANDS, captureExpands);
+		}
+	}
+
+	/**
+	 * Searches every root move to the given depth, updating bestMove. A partly searched
+	 * iteration still updates it when a move beats the previous best, which is always searched first.
+	 * @param n The number of root moves
+	 * @param depth The depth to search to
+	 * @param rotate Rotation applied to the moves after the first
+	 */
+	private void searchRoot(int n, int depth, int rotate){
+		long[] list = moves[0];
+		int[] rootOrder = order[0];
+		int[] ordered = order[1];
+		ordering.order(list, n, bestMove, 0, board.p1Turn, ordered);
+		rootOrder[0] = ordered[0];
+		for (int k = 1; k < n; k++)
+			rootOrder[k] = ordered[1 + (k - 1 + rotate) % (n - 1)];
+		int alpha = -INFINITY;
+		int best = -1;
+		pvLength[0] = 0;
+		for (int k = 0; k < n; k++){
+			int i = rootOrder[k];
+			int undo = play(list[i]);
+			int score = -search(depth - 1, -INFINITY, -alpha, 1);
+			takeBack(list[i], undo);
+			followPv = false;
+			if (aborted)
+				break;
+			if (score > alpha){
+				alpha = score;
+				best = i;
+				updatePv(0, i);
+				bestMove = best;
+			}
+		}
+		if (best >= 0){
+			bestScore = alpha;
+			if (!aborted)
+				tt.store(board.getHash(), depth, TranspositionTable.EXACT, alpha, best);
+		}
+	}
+
+	/**
+	 * Fail-soft negamax alpha-beta search of the current board.
+	 * @param depth The remaining depth
+	 * @param alpha The lower bound
+	 * @param beta The upper bound
+	 * @param ply The distance from the root
+	 * @return The score from the point of view of the side to move
+	 */
+	private int search(int depth, int alpha, int beta, int ply){
+		if (history.isCycle()){
+			pvLength[ply] = ply;
+			return 0;
+		}
+		if (depth <= 0)
+			return quiesce(alpha, beta, ply);
+		nodes++;
+		pvLength[ply] = ply;
+		if (control.stop || (((nodes & 1023) == 0) && control.expired())){
+			aborted = true;
+			return 0;
+		}
+		if (tablebase != null){
+			int entry = tablebase.probe(board);
+			if (entry != 0)
+				return tablebaseScore(entry, ply);
+		}
+		if (ply >= MAX_PLY - 1)
+			return evaluate(ply);
+		int pvMove = -1;
+		if (followPv){
+			if (ply < prevPvLength)
+				pvMove = prevPv[ply];
+			else
+				followPv = false;
+		}
+		long key = board.getHash();
+		int ttMove = -1;
+		long entry = tt.probe(key);
+		ttProbes++;
+		if (entry != 0){
+			ttHits++;
+			ttMove = TranspositionTable.move(entry);
+			if ((pvMove < 0) && (TranspositionTable.depth(entry) >= depth)){
+				int s = fromTable(TranspositionTable.score(entry), ply);
+				int bound = TranspositionTable.bound(entry);
+				if ((bound == TranspositionTable.EXACT) ||
+						((bound == TranspositionTable.LOWER) && (s >= beta)) ||
+						((bound == TranspositionTable.UPPER) && (s <= alpha)))
+					return s;
+			}
+		}
+		long[] list = moves[ply];
+		int n = session.expandUncounted(board, list);
+		if (n < 0){
+			if (session.getLooksLeft() == 0){
+				aborted = true;
+				return 0;
+			}
+			return quiesce(alpha, beta, ply);
+		}
+		expands++;
+		generated += n;
+		if (n == 0)
+			return terminal(ply);
+		int first = (pvMove >= 0) ? pvMove : ttMove;
+		if (first >= n)
+			first = -1;
+		int[] ord = order[ply];
+		ordering.order(list, n, first, ply, board.p1Turn, ord);
+		int alphaOrig = alpha;
+		int best = -INFINITY;
+		int bestIdx = -1;
+		for (int k = 0; k < n; k++){
+			int i = ord[k];
+			int undo = play(list[i]);
+			int s = -search(depth - 1, -beta, -alpha, ply + 1);
+			takeBack(list[i], undo);
+			followPv = false;
+			if (aborted)
+				return 0;
+			if (s > best){
+				best = s;
+				bestIdx = i;
+				if (s > alpha){
+					alpha = s;
+					updatePv(ply, i);
+					if (alpha >= beta){
+						cutoffs++;
+						ordering.recordCutoff(list[i], ply, depth, board.p1Turn);
+						break;
+					}
+				}
+			}
+		}
+		int bound;
+		if (best <= alphaOrig)
+			bound = TranspositionTable.UPPER;
+		else if (best >= beta)
+			bound = TranspositionTable.LOWER;
+		else
+			bound = TranspositionTable.EXACT;
+		tt.store(key, depth, bound, toTable(best, ply), bestIdx);
+		return best;
+	}
+
+	/**
+	 * Searches only captures until the position is quiet, so the search never stops in the
+	 * middle of an exchange. Jumps are mandatory, so there is no standing pat while one is
+	 * available. Captures are tried in order of their static exchange estimate, and those
+	 * expected to lose material are skipped once another capture has been searched.
+	 * Capture expansions are not charged to the look budget or limited by depth; they are
+	 * counted in qnodes and the session's capture looks.
+	 * @param alpha The lower bound
+	 * @param beta The upper bound
+	 * @param ply The distance from the root
+	 * @return The score from the point of view of the side to move
+	 */
+	private int quiesce(int alpha, int beta, int ply){
+		qnodes++;
+		pvLength[ply] = ply;
+		if (control.stop || (((qnodes & 1023) == 0) && control.expired())){
+			aborted = true;
+			return 0;
+		}
+		if (tablebase != null){
+			int entry = tablebase.probe(board);
+			if (entry != 0)
+				return tablebaseScore(entry, ply);
+		}
+		if ((ply >= MAX_PLY - 1) || !Evaluation.hasCapture(board))
+			return evaluate(ply);
+		long[] list = moves[ply];
+		int n = session.expandCapturesUncounted(board, list);
+		captureExpands++;
+		int[] ord = order[ply];
+		int[] gain = gains[ply];
+		for (int i = 0; i < n; i++){
+			int g = evaluation.exchange(board, list[i]);
+			int k = i;
+			while ((k > 0) && (gain[k - 1] < g)){
+				gain[k] = gain[k - 1];
+				ord[k] = ord[k - 1];
+				k--;
+			}
+			gain[k] = g;
+			ord[k] = i;
+		}
+		int best = -INFINITY;
+		for (int k = 0; k < n; k++){
+			if ((k > 0) && (gain[k] < 0))
+				break;
+			int i = ord[k];
+			int undo = evaluation.makeMove(board, list[i]);
+			int s = -quiesce(-beta, -alpha, ply + 1);
+			evaluation.unmakeMove(board, list[i], undo);
+			if (aborted)
+				return 0;
+			if (s > best){
+				best = s;
+				if (s > alpha){
+					alpha = s;
+					updatePv(ply, i);
+					if (alpha >= beta)
+						break;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Makes a move on the board, the evaluation and the history.
+	 * @param m The move
+	 * @return The value to pass to takeBack
+	 */
+	private int play(long m){
+		boolean irreversible = PositionHistory.irreversible(board, m);
+		int undo = evaluation.makeMove(board, m);
+		history.push(board.getHash(), irreversible);
+		return undo;
+	}
+
+	/**
+	 * Takes back a move made with play.
+	 * @param m The move
+	 * @param undo The value play returned
+	 */
+	private void takeBack(long m, int undo){
+		history.pop();
+		evaluation.unmakeMove(board, m, undo);
+	}
+
+	/**
+	 * Makes move i followed by the child's line the principal variation from ply.
+	 * @param ply The ply of the node
+	 * @param i The index of the move that raised alpha
+	 */
+	private void updatePv(int ply, int i){
+		int[] line = pv[ply];
+		int[] child = pv[ply + 1];
+		line[ply] = i;
+		int len = pvLength[ply + 1];
+		for (int p = ply + 1; p < len; p++)
+			line[p] = child[p];
+		pvLength[ply] = Math.max(len, ply + 1);
+	}
+
+	/**
+	 * Scores a tablebase entry. Wins and losses score like the ends of games found by search,
+	 * so the quickest win and slowest loss are preferred.
+	 * @param entry The entry for the current board
+	 * @param ply The distance from the root
+	 * @return The score from the point of view of the side to move
+	 */
+	private int tablebaseScore(int entry, int ply){
+		switch(Tablebase.value(entry)){
+		case Tablebase.WIN:
+			return WIN - ply - Tablebase.distance(entry);
+		case Tablebase.LOSS:
+			return -WIN + ply + Tablebase.distance(entry);
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * Scores the current board with the evaluation.
+	 * @param ply The distance from the root
+	 * @return The score from the point of view of the side to move
+	 */
+	private int evaluate(int ply){
+		int own = board.p1Turn ? board.getP1Pieces() : board.getP2Pieces();
+		int opp = board.p1Turn ? board.getP2Pieces() : board.getP1Pieces();
+		if (own == 0)
+			return -WIN + ply;
+		if (opp == 0)
+			return WIN - ply;
+		return evaluation.evaluate(board);
+	}
+
+	/**
+	 * Scores a board with no moves. The game ends there; it is lost if the side to move
+	 * has no pieces left and tied if it is only blocked.
+	 * @param ply The distance from the root
+	 * @return The score from the point of view of the side to move
+	 */
+	private int terminal(int ply){
+		int own = board.p1Turn ? board.getP1Pieces() : board.getP2Pieces();
+		return (own == 0) ? -WIN + ply : 0;
+	}
+
+	/**
+	 * Converts a win/loss score from distance-to-root to distance-to-node for storing.
+	 */
+	private static int toTable(int score, int ply){
+		if (score > WIN_BOUND)
+			return score + ply;
+		if (score < -WIN_BOUND)
+			return score - ply;
+		return score;
+	}
+
+	/**
+	 * Converts a stored win/loss score back to distance-to-root.
+	 */
+	private static int fromTable(int score, int ply){
+		if (score > WIN_BOUND)
+			return score - ply;
+		if (score < -WIN_BOUND)
+			return score + ply;
+		return score;
+	}
+}
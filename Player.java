@@ -74,5 +74,6 @@ public class Player {
 			System.out.println("Player 2 wins!");
 		else
 			System.out.println("Tie!");
+		System.out.print(Game.getRecord().toPDN(null));
 	}
 }
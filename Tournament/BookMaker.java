@@ -0,0 +1,52 @@
+package Tournament;
+
+import java.io.File;
+import java.io.IOException;
+
+import Checkers.OpeningBook;
+import EnginePlayer.ParallelSolver;
+
+/**
+ * Compiles an opening book from engine self-play. Two copies of the engine play a
+ * Tournament from random openings, and the first plies of every game go into the book.
+ * <p>
+ * Usage: java Tournament.BookMaker [-games n] [-plies n] [-depth n] [-min n] [-threads n] [file]
+ * @author mhtong
+ *
+ */
+public class BookMaker {
+	public static void main(String args[]) throws IOException{
+		int games = 200;
+		int plies = 16;
+		int depth = 6;
+		int minGames = 2;
+		int threads = Runtime.getRuntime().availableProcessors();
+		File out = new File("book.bin");
+		for (int a = 0; a < args.length; a++){
+			if (args[a].equals("-games"))
+				games = Integer.parseInt(args[++a]);
+			else if (args[a].equals("-plies"))
+				plies = Integer.parseInt(args[++a]);
+			else if (args[a].equals("-depth"))
+				depth = Integer.parseInt(args[++a]);
+			else if (args[a].equals("-min"))
+				minGames = Integer.parseInt(args[++a]);
+			else if (args[a].equals("-threads"))
+				threads = Integer.parseInt(args[++a]);
+			else
+				out = new File(args[a]);
+		}
+		final int d = depth;
+		final OpeningBook.Builder builder = new OpeningBook.Builder(plies);
+		Tournament t = new Tournament(d, 0)
+				.add("A", () -> new ParallelSolver(1, d, 16))
+				.add("B", () -> new ParallelSolver(1, d, 16))
+				.setGames(games)
+				.setThreads(threads)
+				.setListener((actions, result) -> builder.addGame(actions, result));
+		for (Tournament.Pairing p:t.run())
+			System.out.println(p);
+		int records = builder.write(out, minGames);
+		System.out.println(String.format("%d games, %d book moves written to %s", builder.getGames(), records, out));
+	}
+}
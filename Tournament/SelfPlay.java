@@ -0,0 +1,76 @@
+package Tournament;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import Checkers.GameLog;
+import Checkers.GameRecord;
+import Checkers.TrainingData;
+import EnginePlayer.ParallelSolver;
+
+/**
+ * Generates training data from engine self-play. Two copies of the engine play a
+ * Tournament from random openings on every core, and the quiet positions of each game are
+ * written with its result as the game finishes, so nothing is held in memory. With -log,
+ * the games themselves are also appended to a GameLog.
+ * <p>
+ * Usage: java Tournament.SelfPlay [-games n] [-depth n] [-opening n] [-skip n] [-threads n] [-seed n] [-log dir] [file]
+ * @author mhtong
+ *
+ */
+public class SelfPlay {
+	public static void main(String args[]) throws IOException{
+		int games = 1000;
+		int depth = 4;
+		int opening = 8;
+		int skip = 8;
+		long seed = 1;
+		int threads = Runtime.getRuntime().availableProcessors();
+		File out = new File("training.bin");
+		File logDir = null;
+		for (int a = 0; a < args.length; a++){
+			if (args[a].equals("-games"))
+				games = Integer.parseInt(args[++a]);
+			else if (args[a].equals("-depth"))
+				depth = Integer.parseInt(args[++a]);
+			else if (args[a].equals("-opening"))
+				opening = Integer.parseInt(args[++a]);
+			else if (args[a].equals("-skip"))
+				skip = Integer.parseInt(args[++a]);
+			else if (args[a].equals("-threads"))
+				threads = Integer.parseInt(args[++a]);
+			else if (args[a].equals("-seed"))
+				seed = Long.parseLong(args[++a]);
+			else if (args[a].equals("-log"))
+				logDir = new File(args[++a]);
+			else
+				out = new File(args[a]);
+		}
+		final int d = depth;
+		try (TrainingData.Writer writer = new TrainingData.Writer(out, skip);
+				GameLog log = (logDir == null) ? null : new GameLog(logDir, GameLog.DEFAULT_SEGMENT)){
+			Tournament t = new Tournament(d, 0)
+					.add("A", () -> new ParallelSolver(1, d, 16))
+					.add("B", () -> new ParallelSolver(1, d, 16))
+					.setGames(games)
+					.setOpeningPlies(opening)
+					.setThreads(threads)
+					.setSeed(seed)
+					.setListener((actions, result) -> {
+						try{
+							writer.addGame(actions, result);
+							if (log != null)
+								log.append(new GameRecord(actions, result));
+						}
+						catch (IOException e){
+							throw new UncheckedIOException(e);
+						}
+					});
+			for (Tournament.Pairing p:t.run())
+				System.out.println(p);
+			System.out.println(String.format("%d games, %d positions written to %s", writer.getGames(),
+					writer.getPositions(), out));
+		}
+	}
+}
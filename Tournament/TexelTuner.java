@@ -0,0 +1,241 @@
+package Tournament;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import Checkers.Evaluation;
+import Checkers.TrainingData;
+
+/**
+ * Fits Evaluation weights to game results, Texel style: the evaluation of each training
+ * position, squashed by a logistic curve, should predict the result of the game it came
+ * from. The tuner minimises the mean squared difference over the whole file by gradient
+ * descent (Adam).
+ * <p>
+ * The evaluation is linear in its weights (see Evaluation.coefficients), so the error and
+ * its exact gradient are found in one pass. Each pass streams the file in chunks; every
+ * chunk is split between the threads, which return partial sums that are added in a
+ * fixed order, so results do not depend on thread timing. The scale of the logistic curve
+ * is fitted first with the starting weights and then held fixed, and the man weight stays
+ * fixed as the unit of the rest.
+ * <p>
+ * Usage: java Tournament.TexelTuner [-weights file] [-passes n] [-rate r] [-threads n] [-chunk n] [-out file] data
+ * @author mhtong
+ *
+ */
+public class TexelTuner {
+	/**The training file*/
+	private final TrainingData.Reader reader;
+
+	/**The records read at a time*/
+	private final TrainingData.Chunk chunk;
+
+	/**Worker threads*/
+	private final int threads;
+
+	/**Runs the workers*/
+	private final ExecutorService pool;
+
+	/**
+	 * Opens a training file.
+	 * @param data The file, as written by SelfPlay
+	 * @param threads The number of threads
+	 * @param chunkSize The records read at a time
+	 * @throws IOException If the file cannot be read
+	 */
+	public TexelTuner(File data, int threads, int chunkSize) throws IOException{
+		reader = new TrainingData.Reader(data);
+		chunk = new TrainingData.Chunk(chunkSize);
+		this.threads = Math.max(1, threads);
+		pool = Executors.newFixedThreadPool(this.threads);
+	}
+
+	/**
+	 * @return The number of positions in the file
+	 */
+	public long size(){
+		return reader.size();
+	}
+
+	/**
+	 * Finds the error of a set of weights over the whole file.
+	 * @param w The weights, in the order of Evaluation.getWeights
+	 * @param k The scale of the logistic curve, per evaluation unit
+	 * @param gradient Receives the gradient of the error with respect to w, or null
+	 * @return The mean squared error
+	 * @throws IOException If the file cannot be read
+	 */
+	public double error(double[] w, double k, double[] gradient) throws IOException{
+		double[] total = new double[Evaluation.WEIGHTS + 1];
+		reader.rewind();
+		int n;
+		while ((n = reader.next(chunk)) > 0){
+			List<Callable<double[]>> parts = new ArrayList<Callable<double[]>>();
+			for (int t = 0; t < threads; t++){
+				final int from = (int)((long)n * t / threads), to = (int)((long)n * (t + 1) / threads);
+				parts.add(() -> partial(w, k, from, to, gradient != null));
+			}
+			try{
+				for (Future<double[]> f:pool.invokeAll(parts)){
+					double[] p = f.get();
+					for (int j = 0; j < total.length; j++)
+						total[j] += p[j];
+				}
+			}
+			catch (InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			}
+			catch (ExecutionException e){
+				throw new RuntimeException(e.getCause());
+			}
+		}
+		long count = Math.max(1, reader.size());
+		if (gradient != null)
+			for (int j = 0; j < Evaluation.WEIGHTS; j++)
+				gradient[j] = total[j + 1] / count;
+		return total[0] / count;
+	}
+
+	/**
+	 * Sums the error, and perhaps its gradient, over part of the current chunk.
+	 * @return The error sum, followed by the gradient sums if asked for
+	 */
+	private double[] partial(double[] w, double k, int from, int to, boolean withGradient){
+		double[] sum = new double[Evaluation.WEIGHTS + 1];
+		int[] c = new int[Evaluation.WEIGHTS];
+		for (int r = from; r < to; r++){
+			Evaluation.coefficients(chunk.board(r), c);
+			double s = 0;
+			for (int j = 0; j < c.length; j++)
+				s += w[j] * c[j];
+			double p = 1 / (1 + Math.exp(-k * s));
+			double diff = (chunk.result[r] + 1) * 0.5 - p;
+			sum[0] += diff * diff;
+			if (withGradient){
+				double g = -2 * diff * p * (1 - p) * k;
+				for (int j = 0; j < c.length; j++)
+					sum[j + 1] += g * c[j];
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Finds the logistic scale that best fits a set of weights, by golden section search.
+	 * @param w The weights
+	 * @return The scale, per evaluation unit
+	 * @throws IOException If the file cannot be read
+	 */
+	public double fitScale(double[] w) throws IOException{
+		double lo = 0.0001, hi = 0.05;
+		double g = (Math.sqrt(5) - 1) / 2;
+		double a = hi - g * (hi - lo), b = lo + g * (hi - lo);
+		double ea = error(w, a, null), eb = error(w, b, null);
+		for (int it = 0; it < 24; it++){
+			if (ea < eb){
+				hi = b;
+				b = a;
+				eb = ea;
+				a = hi - g * (hi - lo);
+				ea = error(w, a, null);
+			}
+			else{
+				lo = a;
+				a = b;
+				ea = eb;
+				b = lo + g * (hi - lo);
+				eb = error(w, b, null);
+			}
+		}
+		return (lo + hi) / 2;
+	}
+
+	/**
+	 * Tunes weights by Adam on the full-file gradient.
+	 * @param w The starting weights, updated in place
+	 * @param k The logistic scale
+	 * @param passes The number of passes over the file
+	 * @param rate The step size, in evaluation units
+	 * @return The error of the final weights
+	 * @throws IOException If the file cannot be read
+	 */
+	public double tune(double[] w, double k, int passes, double rate) throws IOException{
+		double[] m = new double[w.length], v = new double[w.length], grad = new double[w.length];
+		double b1 = 0.9, b2 = 0.999;
+		for (int pass = 1; pass <= passes; pass++){
+			double e = error(w, k, grad);
+			for (int j = 1; j < w.length; j++){
+				m[j] = b1 * m[j] + (1 - b1) * grad[j];
+				v[j] = b2 * v[j] + (1 - b2) * grad[j] * grad[j];
+				double mHat = m[j] / (1 - Math.pow(b1, pass)), vHat = v[j] / (1 - Math.pow(b2, pass));
+				w[j] -= rate * mHat / (Math.sqrt(vHat) + 1e-12);
+			}
+			if ((pass == 1) || (pass % 10 == 0))
+				System.out.println(String.format("pass %d: error %.6f", pass, e));
+		}
+		return error(w, k, null);
+	}
+
+	/**
+	 * Stops the worker threads and closes the file.
+	 * @throws IOException If the file cannot be closed
+	 */
+	public void close() throws IOException{
+		pool.shutdownNow();
+		reader.close();
+	}
+
+	public static void main(String args[]) throws IOException{
+		Evaluation start = new Evaluation();
+		int passes = 200;
+		double rate = 1;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int chunkSize = 1 << 16;
+		File out = new File("weights.properties");
+		File data = new File("training.bin");
+		for (int a = 0; a < args.length; a++){
+			if (args[a].equals("-weights"))
+				start = Evaluation.load(new File(args[++a]));
+			else if (args[a].equals("-passes"))
+				passes = Integer.parseInt(args[++a]);
+			else if (args[a].equals("-rate"))
+				rate = Double.parseDouble(args[++a]);
+			else if (args[a].equals("-threads"))
+				threads = Integer.parseInt(args[++a]);
+			else if (args[a].equals("-chunk"))
+				chunkSize = Integer.parseInt(args[++a]);
+			else if (args[a].equals("-out"))
+				out = new File(args[++a]);
+			else
+				data = new File(args[a]);
+		}
+		TexelTuner tuner = new TexelTuner(data, threads, chunkSize);
+		try{
+			int[] initial = start.getWeights();
+			double[] w = new double[initial.length];
+			for (int j = 0; j < w.length; j++)
+				w[j] = initial[j];
+			double k = tuner.fitScale(w);
+			System.out.println(String.format("%d positions, scale %.6f, error %.6f", tuner.size(), k,
+					tuner.error(w, k, null)));
+			double e = tuner.tune(w, k, passes, rate);
+			int[] tuned = new int[w.length];
+			for (int j = 0; j < w.length; j++)
+				tuned[j] = (int)Math.round(w[j]);
+			Evaluation result = new Evaluation(tuned);
+			result.save(out);
+			System.out.println(String.format("error %.6f, weights %s written to %s", e, result.toProperties(), out));
+		}
+		finally{
+			tuner.close();
+		}
+	}
+}
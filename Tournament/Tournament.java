@@ -0,0 +1,366 @@
+package Tournament;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import CheckersPlayer.Solver;
+import Checkers.GameSession;
+
+/**
+ * Plays many games between Solvers at once, without printing any boards. Every pair of
+ * entrants plays a number of games on a thread pool; games come in pairs that share a
+ * random opening with the colours swapped. Each game runs in its own GameSession bound
+ * to the worker thread playing it, so games do not interfere.
+ * <p>
+ * Solvers are created from their entrant's factory once per worker thread and reused for
+ * every game that thread plays, so they need not be thread safe.
+ * @author mhtong
+ *
+ */
+public class Tournament {
+	/**A named source of Solvers*/
+	public static class Entrant {
+		/**The name shown in reports*/
+		public final String name;
+
+		/**Creates a fresh Solver*/
+		public final Supplier<Solver> factory;
+
+		/**
+		 * @param name The name shown in reports
+		 * @param factory Creates a fresh Solver
+		 */
+		public Entrant(String name, Supplier<Solver> factory){
+			this.name = name;
+			this.factory = factory;
+		}
+	}
+
+	/**The results of one pairing, from the point of view of its first entrant*/
+	public static class Pairing {
+		/**The first entrant*/
+		public final Entrant a;
+
+		/**The second entrant*/
+		public final Entrant b;
+
+		/**Games won by a*/
+		public int wins;
+
+		/**Games won by b*/
+		public int losses;
+
+		/**Games tied, including those stopped at the ply limit*/
+		public int draws;
+
+		Pairing(Entrant a, Entrant b){
+			this.a = a;
+			this.b = b;
+		}
+
+		/**
+		 * @return The number of games played
+		 */
+		public int games(){
+			return wins + losses + draws;
+		}
+
+		/**
+		 * @return a's score fraction, counting a draw as half a win
+		 */
+		public double score(){
+			return (games() == 0) ? 0.5 : (wins + 0.5 * draws) / games();
+		}
+
+		/**
+		 * @return The Elo difference of a over b implied by the score
+		 */
+		public double elo(){
+			return elo(score());
+		}
+
+		/**
+		 * Gets the half width of the 95% confidence interval of elo(), from the variance
+		 * of the per-game scores.
+		 * @return The margin in Elo, infinite if the interval reaches a score of 0 or 1
+		 */
+		public double eloMargin(){
+			int n = games();
+			if (n < 2)
+				return Double.POSITIVE_INFINITY;
+			double p = score();
+			double var = (wins * (1 - p) * (1 - p) + draws * (0.5 - p) * (0.5 - p) + losses * p * p) / n;
+			double se = Math.sqrt(var / n);
+			double lo = elo(p - 1.96 * se);
+			double hi = elo(p + 1.96 * se);
+			if (Double.isInfinite(lo) || Double.isInfinite(hi))
+				return Double.POSITIVE_INFINITY;
+			return (hi - lo) / 2;
+		}
+
+		private static double elo(double p){
+			if (p <= 0)
+				return Double.NEGATIVE_INFINITY;
+			if (p >= 1)
+				return Double.POSITIVE_INFINITY;
+			return -400 * Math.log10(1 / p - 1);
+		}
+
+		public String toString(){
+			return String.format("%s vs %s: +%d -%d =%d  Elo %+.1f +/- %.1f",
+					a.name, b.name, wins, losses, draws, elo(), eloMargin());
+		}
+	}
+
+	/**Receives every finished game*/
+	public interface Listener {
+		/**
+		 * Called on the worker thread that played a game, once it is over.
+		 * @param actions The action index chosen at each ply, from the start position
+		 * @param result 1 if P1 won, -1 if P2 won, 0 for a tie
+		 */
+		void gameFinished(int[] actions, int result);
+	}
+
+	/**The entrants*/
+	private final List<Entrant> entrants = new ArrayList<Entrant>();
+
+	/**The depth limit of every game, 0 for none*/
+	private final int depthLimit;
+
+	/**The look limit of every game, 0 for none*/
+	private final int lookLimit;
+
+	/**Games per pairing, rounded up to an even number*/
+	private int games = 10;
+
+	/**Random moves played before the Solvers take over*/
+	private int openingPlies = 4;
+
+	/**Plies after which a game is stopped and scored as a tie*/
+	private int maxPlies = 400;
+
+	/**Worker threads*/
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	/**Seed for the random openings*/
+	private long seed = 1;
+
+	/**Told about every finished game, or null*/
+	private Listener listener;
+
+	/**Plies played by the Solvers in the last run, for moves/sec*/
+	private final AtomicLong plies = new AtomicLong();
+
+	/**Wall time of the last run in nanoseconds*/
+	private long elapsed;
+
+	/**
+	 * Creates a tournament whose games use the given limits.
+	 * @param depthLimit The depth limit of every game (0 for no limit)
+	 * @param lookLimit The look limit of every game (0 for no limit)
+	 */
+	public Tournament(int depthLimit, int lookLimit){
+		this.depthLimit = depthLimit;
+		this.lookLimit = lookLimit;
+	}
+
+	/**
+	 * Adds an entrant. Every entrant plays every other.
+	 * @param name The name shown in reports
+	 * @param factory Creates a fresh Solver
+	 * @return this
+	 */
+	public Tournament add(String name, Supplier<Solver> factory){
+		entrants.add(new Entrant(name, factory));
+		return this;
+	}
+
+	/**
+	 * @param games The number of games per pairing, rounded up to an even number so each opening is played with both colours
+	 * @return this
+	 */
+	public Tournament setGames(int games){
+		this.games = games + (games & 1);
+		return this;
+	}
+
+	/**
+	 * @param openingPlies The number of random moves played before the Solvers take over, at most maxPlies of them
+	 * @return this
+	 * @throws IllegalArgumentException If openingPlies is negative
+	 */
+	public Tournament setOpeningPlies(int openingPlies){
+		if (openingPlies < 0)
+			throw new IllegalArgumentException("Opening plies must not be negative: " + openingPlies);
+		this.openingPlies = openingPlies;
+		return this;
+	}
+
+	/**
+	 * @param maxPlies The number of plies after which a game is stopped and scored as a tie, random opening moves included
+	 * @return this
+	 * @throws IllegalArgumentException If maxPlies is less than 1
+	 */
+	public Tournament setMaxPlies(int maxPlies){
+		if (maxPlies < 1)
+			throw new IllegalArgumentException("Max plies must be at least 1: " + maxPlies);
+		this.maxPlies = maxPlies;
+		return this;
+	}
+
+	/**
+	 * @param threads The number of games to play at once
+	 * @return this
+	 */
+	public Tournament setThreads(int threads){
+		this.threads = Math.max(1, threads);
+		return this;
+	}
+
+	/**
+	 * @param seed The seed for the random openings
+	 * @return this
+	 */
+	public Tournament setSeed(long seed){
+		this.seed = seed;
+		return this;
+	}
+
+	/**
+	 * @param listener Told about every finished game, from the worker threads, so it must be thread safe. null for none.
+	 * @return this
+	 */
+	public Tournament setListener(Listener listener){
+		this.listener = listener;
+		return this;
+	}
+
+	/**
+	 * Plays every game and collects the results.
+	 * @return One Pairing per pair of entrants
+	 */
+	public List<Pairing> run(){
+		List<Pairing> pairings = new ArrayList<Pairing>();
+		for (int i = 0; i < entrants.size(); i++)
+			for (int j = i + 1; j < entrants.size(); j++)
+				pairings.add(new Pairing(entrants.get(i), entrants.get(j)));
+		final ThreadLocal<Map<Entrant, Solver>> solvers = new ThreadLocal<Map<Entrant, Solver>>(){
+			protected Map<Entrant, Solver> initialValue(){
+				return new HashMap<Entrant, Solver>();
+			}
+		};
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+		plies.set(0);
+		long start = System.nanoTime();
+		for (int p = 0; p < pairings.size(); p++){
+			final Pairing pairing = pairings.get(p);
+			for (int g = 0; g < games; g++){
+				final boolean aFirst = (g & 1) == 0;
+				final long openingSeed = seed * 1000003 + p * 10007 + (g >> 1);
+				results.add(pool.submit(() -> {
+					Map<Entrant, Solver> mine = solvers.get();
+					Solver sa = mine.computeIfAbsent(pairing.a, e -> e.factory.get());
+					Solver sb = mine.computeIfAbsent(pairing.b, e -> e.factory.get());
+					int r = playGame(aFirst ? sa : sb, aFirst ? sb : sa, openingSeed);
+					return aFirst ? r : -r;
+				}));
+			}
+		}
+		try{
+			int k = 0;
+			for (Pairing pairing:pairings){
+				for (int g = 0; g < games; g++){
+					int r = results.get(k++).get();
+					if (r > 0)
+						pairing.wins++;
+					else if (r < 0)
+						pairing.losses++;
+					else
+						pairing.draws++;
+				}
+			}
+		}
+		catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException e){
+			throw new RuntimeException(e.getCause());
+		}
+		finally{
+			pool.shutdownNow();
+		}
+		elapsed = System.nanoTime() - start;
+		return pairings;
+	}
+
+	/**
+	 * Plays one game on the calling thread.
+	 * @param p1 P1's Solver
+	 * @param p2 P2's Solver
+	 * @param openingSeed Seed for the random opening moves
+	 * @return 1 if P1 wins, -1 if P2 wins, 0 for a tie
+	 */
+	private int playGame(Solver p1, Solver p2, long openingSeed){
+		GameSession session = new GameSession(depthLimit, lookLimit);
+		session.bind();
+		try{
+			Random r = new Random(openingSeed);
+			int[] actions = new int[maxPlies];
+			int ply = 0;
+			for (; (ply < openingPlies) && (ply < maxPlies) && (session.getNumMoves() > 0); ply++){
+				actions[ply] = r.nextInt(session.getNumMoves());
+				session.doMove(actions[ply]);
+			}
+			for (; (ply < maxPlies) && (session.getNumMoves() > 0); ply++){
+				Solver p = ((ply & 1) == 0) ? p1 : p2;
+				actions[ply] = p.selectMove(session.getBoard());
+				session.doMove(actions[ply]);
+				plies.incrementAndGet();
+			}
+			int result = session.p1Win() ? 1 : session.p2Win() ? -1 : 0;
+			if (listener != null)
+				listener.gameFinished(Arrays.copyOf(actions, ply), result);
+			return result;
+		}
+		finally{
+			GameSession.unbind();
+		}
+	}
+
+	/**
+	 * Gets the moves per second the Solvers made during the last run, over all threads.
+	 * @return Solver moves per second of wall time
+	 */
+	public double getMovesPerSecond(){
+		return (elapsed == 0) ? 0 : plies.get() * 1e9 / elapsed;
+	}
+
+	/**
+	 * Runs a tournament between the random player and the parallel engine.
+	 * @param args Optional: games per pairing, worker threads
+	 */
+	public static void main(String args[]){
+		int games = (args.length > 0) ? Integer.parseInt(args[0]) : 20;
+		int threads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		Tournament t = new Tournament(6, 0)
+				.add("Random", () -> new RandomPlayer.RandomSolver())
+				.add("Parallel", () -> new EnginePlayer.ParallelSolver(1, 6, 16))
+				.setGames(games)
+				.setThreads(threads);
+		for (Pairing p:t.run())
+			System.out.println(p);
+		System.out.println(String.format("%.0f moves/sec", t.getMovesPerSecond()));
+	}
+}
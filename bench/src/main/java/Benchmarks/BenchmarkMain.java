@@ -0,0 +1,25 @@
+package Benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler attached, so allocation rate per operation is
+ * reported next to the timings. Accepts the usual JMH command line options, e.g. a
+ * benchmark name regex.
+ * @author mhtong
+ *
+ */
+public class BenchmarkMain {
+	public static void main(String args[]) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions cmd = new CommandLineOptions(args);
+		new Runner(new OptionsBuilder()
+				.parent(cmd)
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
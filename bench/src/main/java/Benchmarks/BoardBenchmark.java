@@ -0,0 +1,89 @@
+package Benchmarks;
+
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Checkers.Board;
+import Checkers.Coord;
+import Checkers.Game;
+import Checkers.GameSession;
+import Checkers.Move;
+import Checkers.Threats;
+
+/**
+ * Single-board operations: copying a Board, make/unmake of one move, and threat detection,
+ * both through Game.getThreats and straight from the attack maps in Threats.
+ * @author mhtong
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+	@Param({"start", "midgame", "endgame"})
+	public String position;
+
+	private Board board;
+
+	private long move;
+
+	private final long[] sequences = new long[Move.MAX_MOVES];
+
+	@Setup
+	public void setup(){
+		board = Positions.get(position);
+		long[] moves = new long[Move.MAX_MOVES];
+		Positions.UNLIMITED.expand(board, moves);
+		move = moves[0];
+		Positions.UNLIMITED.bind();
+	}
+
+	@TearDown
+	public void tearDown(){
+		GameSession.unbind();
+	}
+
+	@Benchmark
+	public Board copy(){
+		return new Board(board);
+	}
+
+	@Benchmark
+	public long makeUnmake(){
+		int undo = board.makeMove(move);
+		long h = board.getHash();
+		board.unmakeMove(move, undo);
+		return h;
+	}
+
+	@Benchmark
+	public Vector<Coord> threats(){
+		return Game.getThreats(board);
+	}
+
+	@Benchmark
+	public int threatMask(){
+		return Threats.mask(board, true) ^ Threats.mask(board, false);
+	}
+
+	@Benchmark
+	public int threatSequences(){
+		return Threats.sequences(board, true, sequences) + Threats.sequences(board, false, sequences);
+	}
+}
@@ -0,0 +1,74 @@
+package Benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Checkers.Board;
+import Checkers.Features;
+import Checkers.MLPEvaluator;
+
+/**
+ * Throughput of the reference MLPEvaluator against batch size. Every invocation scores
+ * the same POSITIONS positions of random midgames, split into batches of the given
+ * size, so the scores are per position and comparable across batch sizes.
+ * @author mhtong
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluatorBenchmark {
+	/**Positions scored per invocation*/
+	private static final int POSITIONS = 1024;
+
+	@Param({"1", "8", "32", "128", "1024"})
+	public int batch;
+
+	@Param({"64,32", "256,32,32"})
+	public String hidden;
+
+	private MLPEvaluator network;
+
+	/**The positions' features, one buffer per batch*/
+	private float[][] batches;
+
+	private float[] out;
+
+	@Setup
+	public void setup(){
+		String[] parts = hidden.split(",");
+		int[] sizes = new int[parts.length];
+		for (int l = 0; l < parts.length; l++)
+			sizes[l] = Integer.parseInt(parts[l]);
+		network = new MLPEvaluator(sizes, 1);
+		batches = new float[POSITIONS / batch][batch * Features.SIZE];
+		out = new float[batch];
+		for (int p = 0; p < POSITIONS; p++){
+			Board b = Positions.randomWalk(10 + p % 40, p);
+			Features.encode(b, batches[p / batch], (p % batch) * Features.SIZE);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POSITIONS)
+	public float[] evaluate(){
+		for (float[] features:batches)
+			network.evaluate(features, batch, out);
+		return out;
+	}
+}
@@ -0,0 +1,105 @@
+package Benchmarks;
+
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Checkers.Board;
+import Checkers.BoardPool;
+import Checkers.Move;
+
+/**
+ * Perft-style move generation: counts the leaves of the full tree to a fixed depth with
+ * the Vector&lt;Board&gt; generator, with Boards reused from a BoardPool, and with the move
+ * buffer generator and make/unmake.
+ * @author mhtong
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveGenBenchmark {
+	@Param({"start", "midgame", "endgame"})
+	public String position;
+
+	@Param({"4", "6"})
+	public int depth;
+
+	private Board board;
+
+	private final long[][] moves = new long[16][Move.MAX_MOVES];
+
+	private final Board[][] pooled = new Board[16][Move.MAX_MOVES];
+
+	@Setup
+	public void setup(){
+		board = Positions.get(position);
+	}
+
+	@Benchmark
+	public long perftVector(){
+		return perftVector(board, depth);
+	}
+
+	@Benchmark
+	public long perftBuffer(){
+		return perftBuffer(depth, 0);
+	}
+
+	@Benchmark
+	public long perftPooled(){
+		return perftPooled(board, depth, 0, Positions.UNLIMITED.getPool());
+	}
+
+	private static long perftVector(Board b, int d){
+		Vector<Board> next = Positions.UNLIMITED.expand(b);
+		if (d == 1)
+			return next.size();
+		long n = 0;
+		for (Board c:next)
+			n += perftVector(c, d - 1);
+		return n;
+	}
+
+	private long perftBuffer(int d, int ply){
+		long[] list = moves[ply];
+		int count = Positions.UNLIMITED.expand(board, list);
+		if (d == 1)
+			return count;
+		long n = 0;
+		for (int i = 0; i < count; i++){
+			int undo = board.makeMove(list[i]);
+			n += perftBuffer(d - 1, ply + 1);
+			board.unmakeMove(list[i], undo);
+		}
+		return n;
+	}
+
+	private long perftPooled(Board b, int d, int ply, BoardPool pool){
+		Board[] list = pooled[ply];
+		int mark = pool.mark();
+		int count = Positions.UNLIMITED.expand(b, list);
+		long n = count;
+		if (d > 1){
+			n = 0;
+			for (int i = 0; i < count; i++)
+				n += perftPooled(list[i], d - 1, ply + 1, pool);
+		}
+		pool.release(mark);
+		return n;
+	}
+}
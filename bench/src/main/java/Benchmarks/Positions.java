@@ -0,0 +1,73 @@
+package Benchmarks;
+
+import java.util.Random;
+
+import Checkers.Board;
+import Checkers.GameSession;
+import Checkers.Move;
+
+/**
+ * The fixed positions the benchmarks run from.
+ * @author mhtong
+ *
+ */
+public final class Positions {
+	/**A session with no limits, for expanding freely*/
+	static final GameSession UNLIMITED = new GameSession(0, 0);
+
+	private Positions(){
+	}
+
+	/**
+	 * Gets a benchmark position by name.
+	 * @param name "start", "midgame" or "endgame"
+	 * @return A fresh copy of the position
+	 */
+	public static Board get(String name){
+		if (name.equals("start"))
+			return new Board();
+		if (name.equals("midgame"))
+			return randomWalk(24, 150);
+		if (name.equals("endgame"))
+			return endgame();
+		throw new IllegalArgumentException("Unknown position " + name);
+	}
+
+	/**
+	 * Plays seeded random moves from the start, always the same ones for the same arguments.
+	 * @param plies The number of moves to play
+	 * @param seed The random seed
+	 * @return The board reached
+	 */
+	static Board randomWalk(int plies, long seed){
+		Random r = new Random(seed);
+		Board b = new Board();
+		long[] moves = new long[Move.MAX_MOVES];
+		for (int p = 0; p < plies; p++){
+			int n = UNLIMITED.expand(b, moves);
+			if (n <= 0)
+				break;
+			b.makeMove(moves[r.nextInt(n)]);
+		}
+		return new Board(b);
+	}
+
+	/**
+	 * A kings-and-men endgame with long multi-jump chances for both sides.
+	 */
+	private static Board endgame(){
+		int[][] cells = new int[Board.BOARDSIZE][Board.BOARDSIZE];
+		cells[0][2] = 2;
+		cells[2][2] = 1;
+		cells[5][1] = 1;
+		cells[6][4] = 2;
+		cells[1][5] = -1;
+		cells[3][3] = -1;
+		cells[3][5] = -2;
+		cells[5][5] = -1;
+		cells[6][6] = -2;
+		Board b = new Board(cells);
+		b.p1Turn = true;
+		return b;
+	}
+}
@@ -0,0 +1,73 @@
+package Benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Checkers.Board;
+import Checkers.GameSession;
+import Checkers.SearchStats;
+import EnginePlayer.ParallelSolver;
+
+/**
+ * A full single-threaded alpha-beta selectMove at a fixed depth, starting each call from
+ * an empty transposition table, with and without SearchStats counting.
+ * @author mhtong
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+	@Param({"start", "midgame", "endgame"})
+	public String position;
+
+	@Param({"6", "8"})
+	public int depth;
+
+	@Param({"false", "true"})
+	public boolean stats;
+
+	private Board board;
+
+	private ParallelSolver solver;
+
+	@Setup
+	public void setup(){
+		board = Positions.get(position);
+		solver = new ParallelSolver(1, depth, 16);
+		Positions.UNLIMITED.setStats(stats ? new SearchStats() : null);
+		Positions.UNLIMITED.bind();
+	}
+
+	@Setup(Level.Invocation)
+	public void clearTable(){
+		solver.getTable().clear();
+	}
+
+	@TearDown
+	public void tearDown(){
+		Positions.UNLIMITED.setStats(null);
+		GameSession.unbind();
+	}
+
+	@Benchmark
+	public int selectMove(){
+		return solver.selectMove(board);
+	}
+}